@@ -0,0 +1,54 @@
+package com.github.paperrose.pdfviewer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tile grid computed by the pages loader for every page it walks through
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PageGridBenchmark {
+
+    private static final int PAGES = 1024;
+
+    @Param({"1", "3", "10"})
+    public float zoom;
+
+    private final PageGrid grid = new PageGrid();
+
+    private final float[] widths = new float[PAGES];
+
+    private final float[] heights = new float[PAGES];
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < PAGES; i++) {
+            widths[i] = 1080;
+            heights[i] = 1080 * (0.5f + random.nextFloat());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAGES)
+    public float set() {
+        float sum = 0;
+        for (int i = 0; i < PAGES; i++) {
+            grid.set(widths[i], heights[i], zoom);
+            sum += grid.getRowHeight() + grid.getCols() * grid.getPartRenderWidth();
+        }
+        return sum;
+    }
+}
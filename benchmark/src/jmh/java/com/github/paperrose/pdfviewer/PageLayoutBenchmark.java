@@ -0,0 +1,79 @@
+package com.github.paperrose.pdfviewer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Page lookups by offset, done for every frame and every loaded row,
+ * and the cost of a page size read in the background invalidating the offsets
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PageLayoutBenchmark {
+
+    private static final int LOOKUPS = 1024;
+
+    @Param({"100", "10000"})
+    public int pageCount;
+
+    private PageLayout layout;
+
+    private float[] ratios;
+
+    private final float[] offsets = new float[LOOKUPS];
+
+    private int changedPage;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        ratios = new float[pageCount];
+        for (int page = 0; page < pageCount; page++) {
+            // Mostly portrait pages, some landscape ones
+            ratios[page] = random.nextInt(8) == 0 ? 0.707f : 1.414f;
+        }
+        layout = new PageLayout(pageCount, 1.414f);
+        layout.setAxis(true, 1080);
+        layout.setRatios(0, pageCount, ratios);
+        for (int i = 0; i < LOOKUPS; i++) {
+            offsets[i] = random.nextFloat() * layout.getLength();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int getPageAt() {
+        int sum = 0;
+        for (float offset : offsets) {
+            sum += layout.getPageAt(offset);
+        }
+        return sum;
+    }
+
+    /**
+     * Change the size of the first page, summing the offsets of all the pages again
+     */
+    @Benchmark
+    public float setRatiosThenGetLength() {
+        ratios[0] = changedPage++ % 2 == 0 ? 0.707f : 1.414f;
+        layout.setRatios(0, 1, ratios);
+        return layout.getLength();
+    }
+
+    @Benchmark
+    public float setAxisThenGetLength() {
+        layout.setAxis(true, 1080);
+        return layout.getLength();
+    }
+}
@@ -0,0 +1,149 @@
+package com.github.paperrose.pdfviewer;
+
+import com.github.paperrose.pdfviewer.render.SyntheticPages;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to render every part of a zoomed viewport with 1, 2 and 4 render workers, the way
+ * {@code RenderingAsyncTask} does: a worker takes a part, renders it holding the lock of the
+ * document, as pdfium is not thread safe, then scans its pixels outside of the lock like
+ * {@code TileClassifier}. Workers only overlap the work done outside of the lock, so the
+ * gain depends on its share of the part cost.
+ * <p>
+ * The parts come from {@link PageGrid} and are rendered by {@link SyntheticPages}.
+ * <p>
+ * This models the worker loop of the engine, it does not run it: a regression in the scheduling
+ * or the locking of {@code RenderingAsyncTask} does not show here. {@code ViewportRenderTimeTest}
+ * in the library unit tests times the real engine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ViewportRenderBenchmark {
+
+    private static final int VIEW_WIDTH = 1080;
+
+    private static final int VIEW_HEIGHT = 1920;
+
+    /**
+     * About 2.6 ms for a 256x256 part, a simple page with pdfium on a mid-range device
+     */
+    private static final long MEGAPIXEL_COST_NANOS = 40000000L;
+
+    @Param({"1", "2", "4"})
+    public int workers;
+
+    @Param({"3"})
+    public float zoom;
+
+    private final SyntheticPages pages = new SyntheticPages(16, VIEW_WIDTH, VIEW_WIDTH * 4 / 3)
+            .setColorEvery(4)
+            .setMegapixelCostNanos(MEGAPIXEL_COST_NANOS);
+
+    /**
+     * A page of text, without the figure of the colour pages
+     */
+    private static final int PAGE = 1;
+
+    private final Object documentLock = new Object();
+
+    private final List<Part> viewport = new ArrayList<>();
+
+    private ExecutorService executor;
+
+    private static class Part {
+        int width, height, startX, startY, pageWidth, pageHeight;
+    }
+
+    @Setup
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(workers);
+        PageGrid grid = new PageGrid();
+        grid.set(pages.getPageWidth(PAGE), pages.getPageHeight(PAGE), zoom);
+        int cols = Math.min(grid.getCols(), (int) Math.ceil(VIEW_WIDTH / grid.getColWidth()));
+        int rows = Math.min(grid.getRows(), (int) Math.ceil(VIEW_HEIGHT / grid.getRowHeight()));
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                Part part = new Part();
+                part.pageWidth = Math.round(grid.getPartRenderWidth());
+                part.pageHeight = Math.round(grid.getPartRenderHeight());
+                part.width = Math.round(grid.getPartRenderWidth() * grid.getRelativePartWidth());
+                part.height = Math.round(grid.getPartRenderHeight() * grid.getRelativePartHeight());
+                part.startX = -col * part.width;
+                part.startY = -row * part.height;
+                viewport.add(part);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public int renderViewport() throws InterruptedException {
+        final ConcurrentLinkedQueue<Part> queue = new ConcurrentLinkedQueue<>(viewport);
+        final CountDownLatch done = new CountDownLatch(viewport.size());
+        final int[] grayParts = new int[workers];
+        for (int i = 0; i < workers; i++) {
+            final int worker = i;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    int[] pixels = new int[0];
+                    Part part;
+                    while ((part = queue.poll()) != null) {
+                        if (pixels.length < part.width * part.height) {
+                            pixels = new int[part.width * part.height];
+                        }
+                        synchronized (documentLock) {
+                            pages.render(pixels, part.width, part.width, part.height, PAGE,
+                                    part.startX, part.startY, part.pageWidth, part.pageHeight);
+                        }
+                        if (isGray(pixels, part.width * part.height)) {
+                            grayParts[worker]++;
+                        }
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        done.await();
+        int gray = 0;
+        for (int count : grayParts) {
+            gray += count;
+        }
+        return gray;
+    }
+
+    private static boolean isGray(int[] pixels, int length) {
+        for (int i = 0; i < length; i++) {
+            int color = pixels[i];
+            int r = (color >> 16) & 0xFF;
+            int g = (color >> 8) & 0xFF;
+            int b = color & 0xFF;
+            if (Math.abs(r - g) > 8 || Math.abs(g - b) > 8 || Math.abs(r - b) > 8) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,53 @@
+package com.github.paperrose.pdfviewer.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Page filter transforms applied when a document is loaded with user pages
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ArrayUtilsBenchmark {
+
+    @Param({"100", "10000"})
+    public int pageCount;
+
+    /**
+     * Ascending pages, about a third of them repeated
+     */
+    private int[] pages;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        pages = new int[pageCount];
+        int page = 0;
+        for (int i = 0; i < pageCount; i++) {
+            pages[i] = page;
+            if (random.nextInt(3) != 0) {
+                page++;
+            }
+        }
+    }
+
+    @Benchmark
+    public int[] deleteDuplicatedPages() {
+        return ArrayUtils.deleteDuplicatedPages(pages);
+    }
+
+    @Benchmark
+    public int[] calculateIndexesInDuplicateArray() {
+        return ArrayUtils.calculateIndexesInDuplicateArray(pages);
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.paperrose.pdfviewer.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decryption of password protected documents, in memory, on all the cores and streamed.
+ * The streamed variants discard their output, as they would write it to a file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CryptLabBenchmark {
+
+    private static final String PASSWORD = "benchmark";
+
+    /**
+     * 1, 10 and 100 MB. At 100 MB the state and the decrypted copies take a few hundred MB,
+     * the forks get a 2 GB heap, see benchmark/build.gradle.
+     */
+    @Param({"1048576", "10485760", "104857600"})
+    public int size;
+
+    private byte[] encoded;
+
+    private byte[] container;
+
+    private final OutputStream discard = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    @Setup
+    public void setUp() throws Exception {
+        byte[] message = new byte[size];
+        new Random(42).nextBytes(message);
+        encoded = CryptLab.encodeAES(message, PASSWORD);
+        container = CryptContainer.encrypt(message, PASSWORD);
+    }
+
+    @Benchmark
+    public byte[] decodeAES() throws Exception {
+        return CryptLab.decodeAES(encoded, PASSWORD);
+    }
+
+    @Benchmark
+    public byte[] decodeAESParallel() throws Exception {
+        return CryptLab.decodeAESParallel(encoded, PASSWORD);
+    }
+
+    @Benchmark
+    public void decodeAESStreamed() throws Exception {
+        CryptLab.decodeAES(encoded, PASSWORD, discard);
+    }
+
+    /**
+     * Includes the key derivation, paid once per document
+     */
+    @Benchmark
+    public void decryptContainer() throws Exception {
+        CryptContainer.decrypt(new ByteArrayInputStream(container), discard, PASSWORD);
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.paperrose.pdfviewer.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Part lookups and evictions of the cache index at various cache sizes, the default being
+ * {@link Constants.Cache#CACHE_SIZE}. Evictions follow the insertion order, as the cache does
+ * for parts of the same loading pass.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LongHashMapBenchmark {
+
+    private static final int OPERATIONS = 1024;
+
+    @Param({"32", "100", "1000", "10000"})
+    public int cacheSize;
+
+    private LongHashMap<Object> index;
+
+    private final ArrayDeque<Long> order = new ArrayDeque<>();
+
+    private final long[] hits = new long[OPERATIONS];
+
+    private final long[] misses = new long[OPERATIONS];
+
+    private Random random;
+
+    @Setup
+    public void setUp() {
+        random = new Random(42);
+        index = new LongHashMap<>(cacheSize);
+        order.clear();
+        for (int i = 0; i < cacheSize; i++) {
+            long key = random.nextLong();
+            index.put(key, Boolean.TRUE);
+            order.add(key);
+        }
+        Long[] keys = order.toArray(new Long[0]);
+        for (int i = 0; i < OPERATIONS; i++) {
+            hits[i] = keys[random.nextInt(keys.length)];
+            misses[i] = random.nextLong();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public int lookupHit() {
+        int found = 0;
+        for (long key : hits) {
+            if (index.get(key) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public int lookupMiss() {
+        int found = 0;
+        for (long key : misses) {
+            if (index.get(key) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Insert a new part and evict the eldest one, keeping the cache full
+     */
+    @Benchmark
+    public Object insertAndEvict() {
+        long key = random.nextLong();
+        index.put(key, Boolean.TRUE);
+        order.add(key);
+        return index.remove(order.poll());
+    }
+}
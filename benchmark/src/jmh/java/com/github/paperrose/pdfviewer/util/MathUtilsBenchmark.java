@@ -0,0 +1,67 @@
+package com.github.paperrose.pdfviewer.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MathUtils.floor() and ceil() against the Math calls they replace, over 1024 values
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MathUtilsBenchmark {
+
+    private final float[] values = new float[1024];
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (random.nextFloat() - 0.5f) * 20000;
+        }
+    }
+
+    @Benchmark
+    public int floor() {
+        int sum = 0;
+        for (float value : values) {
+            sum += MathUtils.floor(value);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int ceil() {
+        int sum = 0;
+        for (float value : values) {
+            sum += MathUtils.ceil(value);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int mathFloor() {
+        int sum = 0;
+        for (float value : values) {
+            sum += (int) Math.floor(value);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int mathCeil() {
+        int sum = 0;
+        for (float value : values) {
+            sum += (int) Math.ceil(value);
+        }
+        return sum;
+    }
+}
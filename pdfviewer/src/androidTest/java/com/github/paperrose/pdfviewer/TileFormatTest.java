@@ -0,0 +1,162 @@
+package com.github.paperrose.pdfviewer;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.shockwave.pdfium.PdfDocument;
+import com.shockwave.pdfium.PdfiumCore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Renders tiles with pdfium in the two ways a tile not in best quality was and is rendered, and reports their time:
+ * <ul>
+ * <li>rendered in ARGB_8888, then drawn into a RGB_565 bitmap, 4 + 2 bytes per pixel</li>
+ * <li>rendered in RGB_565, pdfium-android renders into a native 24 bits buffer then converts it, 3 + 2 bytes per pixel</li>
+ * </ul>
+ * The timings are logged and sent as instrumentation status, shown by {@code am instrument -r}, with the
+ * peak memory of each way estimated from the bytes per pixel above: pdfium frees its buffer before returning,
+ * so it can't be sampled around the renders.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TileFormatTest {
+
+    private static final String TAG = TileFormatTest.class.getSimpleName();
+
+    private static final int TILE_SIZE = 256;
+
+    private static final int VIEW_WIDTH = 1080;
+
+    private static final float ZOOM = 3;
+
+    private static final int WARM_UP_TILES = 32;
+
+    private static final int TILES = 256;
+
+    /**
+     * Largest difference of a channel between the two ways, they round to 5 and 6 bits differently
+     */
+    private static final int CHANNEL_TOLERANCE = 8;
+
+    private PdfiumCore pdfiumCore;
+
+    private PdfDocument pdfDocument;
+
+    private int pageWidth, pageHeight;
+
+    @Before
+    public void setUp() throws IOException {
+        pdfiumCore = new PdfiumCore(InstrumentationRegistry.getInstrumentation().getTargetContext());
+        pdfDocument = pdfiumCore.newDocument(createDocument());
+        pdfiumCore.openPage(pdfDocument, 0);
+        // Fitted to the view width, then zoomed
+        pageWidth = Math.round(VIEW_WIDTH * ZOOM);
+        pageHeight = pageWidth * pdfiumCore.getPageHeightPoint(pdfDocument, 0) / pdfiumCore.getPageWidthPoint(pdfDocument, 0);
+    }
+
+    @After
+    public void tearDown() {
+        pdfiumCore.closeDocument(pdfDocument);
+    }
+
+    @Test
+    public void renderRgb565() {
+        Bitmap argb = Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888);
+        Bitmap converted = Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.RGB_565);
+        Bitmap direct = Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.RGB_565);
+        Canvas canvas = new Canvas(converted);
+
+        for (int i = 0; i < WARM_UP_TILES; i++) {
+            renderArgbThenConvert(i, argb, canvas);
+            renderTile(i, direct);
+        }
+        long argbNanos = 0;
+        long directNanos = 0;
+        for (int i = 0; i < TILES; i++) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            renderArgbThenConvert(i, argb, canvas);
+            argbNanos += SystemClock.elapsedRealtimeNanos() - start;
+            start = SystemClock.elapsedRealtimeNanos();
+            renderTile(i, direct);
+            directNanos += SystemClock.elapsedRealtimeNanos() - start;
+        }
+
+        int pixels = TILE_SIZE * TILE_SIZE;
+        Bundle results = new Bundle();
+        results.putLong("argb_then_convert_us", argbNanos / TILES / 1000);
+        results.putLong("rgb565_us", directNanos / TILES / 1000);
+        results.putInt("argb_then_convert_estimated_peak_kb", (argb.getByteCount() + converted.getByteCount()) / 1024);
+        results.putInt("rgb565_estimated_peak_kb", (3 * pixels + direct.getByteCount()) / 1024);
+        Log.i(TAG, results.toString());
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+
+        // Both ways show the same tile
+        renderArgbThenConvert(0, argb, canvas);
+        renderTile(0, direct);
+        for (int y = 0; y < TILE_SIZE; y += 7) {
+            for (int x = 0; x < TILE_SIZE; x += 7) {
+                int expected = converted.getPixel(x, y);
+                int actual = direct.getPixel(x, y);
+                assertTrue("Pixel " + x + "," + y, Math.abs(Color.red(expected) - Color.red(actual)) <= CHANNEL_TOLERANCE
+                        && Math.abs(Color.green(expected) - Color.green(actual)) <= CHANNEL_TOLERANCE
+                        && Math.abs(Color.blue(expected) - Color.blue(actual)) <= CHANNEL_TOLERANCE);
+            }
+        }
+    }
+
+    private void renderArgbThenConvert(int tile, Bitmap argb, Canvas canvas) {
+        renderTile(tile, argb);
+        canvas.drawBitmap(argb, 0, 0, null);
+    }
+
+    /**
+     * Render a tile of the zoomed page, going through its tiles row by row
+     */
+    private void renderTile(int tile, Bitmap bitmap) {
+        int cols = pageWidth / TILE_SIZE;
+        int rows = pageHeight / TILE_SIZE;
+        int col = tile % cols;
+        int row = tile / cols % rows;
+        pdfiumCore.renderPageBitmap(pdfDocument, bitmap, 0, -col * TILE_SIZE, -row * TILE_SIZE,
+                pageWidth, pageHeight);
+    }
+
+    /**
+     * A letter page of text lines with a colour figure
+     */
+    private static byte[] createDocument() throws IOException {
+        android.graphics.pdf.PdfDocument document = new android.graphics.pdf.PdfDocument();
+        android.graphics.pdf.PdfDocument.Page page = document.startPage(
+                new android.graphics.pdf.PdfDocument.PageInfo.Builder(612, 792, 1).create());
+        Canvas canvas = page.getCanvas();
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setColor(0xFF3366CC);
+        canvas.drawRect(60, 60, 306, 264, paint);
+        paint.setColor(Color.BLACK);
+        paint.setTextSize(10);
+        for (float y = 290; y < 740; y += 14) {
+            canvas.drawText("The quick brown fox jumps over the lazy dog, again and again and again.", 60, y, paint);
+        }
+        document.finishPage(page);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        document.writeTo(out);
+        document.close();
+        return out.toByteArray();
+    }
+}
@@ -125,6 +125,8 @@ class AnimationManager {
         flingAnimation.addUpdateListener(flingAnim);
         flingAnimation.addListener(flingAnim);
         scroller.fling(startX, startY, velocityX, velocityY, minX, maxX, minY, maxY);
+        // The landing offsets are known now, load them while the fling runs
+        pdfView.startFlingPrefetch(scroller.getFinalX(), scroller.getFinalY(), scroller.getCurrVelocity());
         flingAnimation.setDuration(scroller.getDuration());
         flingAnimation.start();
     }
@@ -211,6 +213,7 @@ class AnimationManager {
         public void onAnimationUpdate(ValueAnimator animation) {
             if (!scroller.isFinished()) {
                 scroller.computeScrollOffset();
+                pdfView.updateFlingVelocity(scroller.getCurrVelocity());
                 pdfView.moveTo(scroller.getCurrX(), scroller.getCurrY());
                 pdfView.loadPageByOffset();
             }
@@ -223,13 +226,14 @@ class AnimationManager {
 
         @Override
         public void onAnimationEnd(Animator animation) {
+            pdfView.stopFlingPrefetch();
             pdfView.loadPages();
             hideHandle();
         }
 
         @Override
         public void onAnimationCancel(Animator animation) {
-
+            pdfView.stopFlingPrefetch();
         }
 
         @Override
@@ -0,0 +1,119 @@
+package com.github.paperrose.pdfviewer;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps released tile bitmaps so the renderer can draw into them again
+ * instead of allocating a new bitmap for every part.
+ * Bitmaps are bucketed by width, height and config, and the pool never holds
+ * more than the given number of bytes. When it is full, the least recently
+ * used bucket is trimmed first.
+ */
+class BitmapPool {
+
+    private final LinkedHashMap<Long, ArrayDeque<Bitmap>> buckets = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final long maxBytes;
+
+    private long currentBytes;
+
+    private long hitCount;
+
+    private long missCount;
+
+    public BitmapPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Return a mutable bitmap of the given size and config, reusing a pooled one if possible.
+     * The content of a reused bitmap is undefined, the caller must overwrite all its pixels.
+     */
+    public Bitmap acquire(int width, int height, Bitmap.Config config) {
+        synchronized (this) {
+            ArrayDeque<Bitmap> bucket = buckets.get(key(width, height, config));
+            if (bucket != null) {
+                Bitmap bitmap;
+                while ((bitmap = bucket.pollLast()) != null) {
+                    currentBytes -= bitmap.getAllocationByteCount();
+                    if (!bitmap.isRecycled()) {
+                        hitCount++;
+                        return bitmap;
+                    }
+                }
+            }
+            missCount++;
+        }
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Give a bitmap back to the pool. The bitmap must not be drawn anymore.
+     */
+    public void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        int size = bitmap.getAllocationByteCount();
+        if (!bitmap.isMutable() || size > maxBytes) {
+            bitmap.recycle();
+            return;
+        }
+        synchronized (this) {
+            Long key = key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+            ArrayDeque<Bitmap> bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = new ArrayDeque<>();
+                buckets.put(key, bucket);
+            }
+            bucket.offerLast(bitmap);
+            currentBytes += size;
+            trimToSize(maxBytes);
+        }
+    }
+
+    /**
+     * Recycle every pooled bitmap
+     */
+    public void clear() {
+        synchronized (this) {
+            trimToSize(0);
+        }
+    }
+
+    private void trimToSize(long size) {
+        Iterator<Map.Entry<Long, ArrayDeque<Bitmap>>> iterator = buckets.entrySet().iterator();
+        while (currentBytes > size && iterator.hasNext()) {
+            ArrayDeque<Bitmap> bucket = iterator.next().getValue();
+            Bitmap bitmap;
+            while (currentBytes > size && (bitmap = bucket.pollFirst()) != null) {
+                currentBytes -= bitmap.getAllocationByteCount();
+                bitmap.recycle();
+            }
+            if (bucket.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getSizeBytes() {
+        return currentBytes;
+    }
+
+    private static long key(int width, int height, Bitmap.Config config) {
+        return ((long) width << 40) | ((long) height << 16) | (config == null ? 0xFFFF : config.ordinal());
+    }
+}
@@ -15,45 +15,181 @@
  */
 package com.github.paperrose.pdfviewer;
 
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.RectF;
-
-import androidx.annotation.Nullable;
+import android.util.SparseArray;
 
 import com.github.paperrose.pdfviewer.model.PagePart;
+import com.github.paperrose.pdfviewer.util.LongHashMap;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.github.paperrose.pdfviewer.util.Constants.Cache.CACHE_SIZE;
+import static com.github.paperrose.pdfviewer.util.Constants.Cache.MEMORY_CLASS_FRACTION;
 import static com.github.paperrose.pdfviewer.util.Constants.Cache.THUMBNAILS_CACHE_SIZE;
 
 class CacheManager {
 
-    private final PriorityQueue<PagePart> passiveCache;
+    private static final PagePart[] NO_PARTS = new PagePart[0];
+
+    /**
+     * Orders the parts by rendered pixels per page width, the coarsest first
+     */
+    private static final Comparator<PagePart> RESOLUTION_COMPARATOR = new Comparator<PagePart>() {
+        @Override
+        public int compare(PagePart part1, PagePart part2) {
+            return Float.compare(resolutionOf(part1), resolutionOf(part2));
+        }
+    };
+
+    /**
+     * Page relative tolerance when checking that parts cover an area
+     */
+    private static final float COVERAGE_EPSILON = 1e-4f;
+
+    /**
+     * Bytes counted for a part of a single color, so they are bounded by the budget too
+     */
+    private static final long SOLID_PART_SIZE = 64;
+
+    private static final Comparator<RectF> TOP_COMPARATOR = new Comparator<RectF>() {
+        @Override
+        public int compare(RectF rect1, RectF rect2) {
+            return Float.compare(rect1.top, rect2.top);
+        }
+    };
+
+    /**
+     * Parts of the previous sets, the least recently used first
+     */
+    private final LinkedHashSet<PagePart> passiveCache;
 
-    private final PriorityQueue<PagePart> activeCache;
+    /**
+     * Parts of the current set, the least recently used first
+     */
+    private final LinkedHashSet<PagePart> activeCache;
+
+    /**
+     * Parts of both caches by {@link PagePart#getKey()}
+     */
+    private final LongHashMap<PagePart> partsIndex;
 
     private final List<PagePart> thumbnails;
 
+    private final LongHashMap<PagePart> thumbnailsIndex;
+
     private final Object passiveActiveLock = new Object();
 
-    private final PagePartComparator comparator = new PagePartComparator();
+    /**
+     * Parts of both caches for drawing, the coarsest first, rebuilt only after the caches changed
+     */
+    private PagePart[] drawList = NO_PARTS;
+
+    private boolean drawListDirty;
+
+    /**
+     * The draw list split by user page, in the same order
+     */
+    private SparseArray<PagePart[]> pageDrawLists = new SparseArray<>();
+
+    private PagePart[] thumbnailsDrawList = NO_PARTS;
+
+    private boolean thumbnailsDrawListDirty;
+
+    private final BitmapPool bitmapPool;
 
-    public CacheManager() {
-        activeCache = new PriorityQueue<>(CACHE_SIZE, comparator);
-        passiveCache = new PriorityQueue<>(CACHE_SIZE, comparator);
+    private final RenderMetrics metrics;
+
+    /**
+     * Keeps the evicted parts compressed
+     */
+    private final CompressedTileCache compressedTileCache;
+
+    /**
+     * Maximum number of bytes held by the parts and thumbnails bitmaps
+     */
+    private volatile long maxBytes;
+
+    private final AtomicLong currentBytes = new AtomicLong();
+
+    private final AtomicLong peakBytes = new AtomicLong();
+
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public CacheManager(BitmapPool bitmapPool, CompressedTileCache compressedTileCache, long maxBytes, RenderMetrics metrics) {
+        this.bitmapPool = bitmapPool;
+        this.compressedTileCache = compressedTileCache;
+        this.metrics = metrics;
+        this.maxBytes = maxBytes;
+        activeCache = new LinkedHashSet<>(CACHE_SIZE);
+        passiveCache = new LinkedHashSet<>(CACHE_SIZE);
+        partsIndex = new LongHashMap<>(CACHE_SIZE);
         thumbnails = new ArrayList<>();
+        thumbnailsIndex = new LongHashMap<>(THUMBNAILS_CACHE_SIZE);
+    }
+
+    /**
+     * Default byte budget, a fraction of the memory class of the device
+     */
+    public static long defaultMaxBytes(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int memoryClass = activityManager != null ? activityManager.getMemoryClass() : 32;
+        return (long) (memoryClass * 1024L * 1024L * MEMORY_CLASS_FRACTION);
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        synchronized (passiveActiveLock) {
+            makeAFreeSpace(0);
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getCurrentBytes() {
+        return currentBytes.get();
+    }
+
+    public long getPeakBytes() {
+        return peakBytes.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
     }
 
     public void cachePart(PagePart part) {
         synchronized (passiveActiveLock) {
+            // The same part may have been rendered twice, keep the cached one
+            PagePart cached = partsIndex.get(part.getKey());
+            if (cached != null && cached.equals(part)) {
+                bitmapPool.release(part.getRenderedBitmap());
+                if (passiveCache.remove(cached)) {
+                    activeCache.add(cached);
+                }
+                return;
+            }
+
             // If cache too big, remove and recycle
-            makeAFreeSpace();
+            long size = sizeOf(part);
+            makeAFreeSpace(size);
 
             // Then add part
-            activeCache.offer(part);
+            activeCache.add(part);
+            partsIndex.put(part.getKey(), part);
+            addBytes(size);
+            drawListDirty = true;
         }
     }
 
@@ -64,47 +200,100 @@ class CacheManager {
         }
     }
 
-    private void makeAFreeSpace() {
+    /**
+     * Evict passive parts first, then active ones, until the given number of bytes fits in the budget
+     */
+    private void makeAFreeSpace(long size) {
         synchronized (passiveActiveLock) {
-            while ((activeCache.size() + passiveCache.size()) >= CACHE_SIZE &&
-                    !passiveCache.isEmpty()) {
-                PagePart part = passiveCache.poll();
-                part.getRenderedBitmap().recycle();
+            while (currentBytes.get() + size > maxBytes && !passiveCache.isEmpty()) {
+                evict(pollEldest(passiveCache));
             }
 
-            while ((activeCache.size() + passiveCache.size()) >= CACHE_SIZE &&
-                    !activeCache.isEmpty()) {
-                activeCache.poll().getRenderedBitmap().recycle();
+            while (currentBytes.get() + size > maxBytes && !activeCache.isEmpty()) {
+                evict(pollEldest(activeCache));
             }
         }
     }
 
+    private static PagePart pollEldest(LinkedHashSet<PagePart> cache) {
+        Iterator<PagePart> iterator = cache.iterator();
+        PagePart part = iterator.next();
+        iterator.remove();
+        return part;
+    }
+
+    private void evict(PagePart part) {
+        if (partsIndex.get(part.getKey()) == part) {
+            partsIndex.remove(part.getKey());
+        }
+        addBytes(-sizeOf(part));
+        evictionCount.incrementAndGet();
+        drawListDirty = true;
+        // Gives the bitmap back to the pool once its pixels are copied, off the UI thread
+        compressedTileCache.put(part, bitmapPool);
+    }
+
+    private void addBytes(long size) {
+        long current = currentBytes.addAndGet(size);
+        long peak;
+        while (current > (peak = peakBytes.get()) && !peakBytes.compareAndSet(peak, current)) {
+            // retry until the peak is at least the current value
+        }
+    }
+
+    private static long sizeOf(PagePart part) {
+        Bitmap bitmap = part.getRenderedBitmap();
+        return bitmap != null ? bitmap.getAllocationByteCount() : SOLID_PART_SIZE;
+    }
+
     public void cacheThumbnail(PagePart part) {
         synchronized (thumbnails) {
+            PagePart cached = thumbnailsIndex.get(part.getKey());
+            if (cached != null && cached.equals(part)) {
+                bitmapPool.release(part.getRenderedBitmap());
+                return;
+            }
+
             // If cache too big, remove and recycle
             if (thumbnails.size() >= THUMBNAILS_CACHE_SIZE) {
-                thumbnails.remove(0).getRenderedBitmap().recycle();
+                PagePart evicted = thumbnails.remove(0);
+                if (thumbnailsIndex.get(evicted.getKey()) == evicted) {
+                    thumbnailsIndex.remove(evicted.getKey());
+                }
+                addBytes(-sizeOf(evicted));
+                evictionCount.incrementAndGet();
+                thumbnailsDrawListDirty = true;
+                bitmapPool.release(evicted.getRenderedBitmap());
             }
 
             // Then add thumbnail
             thumbnails.add(part);
+            thumbnailsIndex.put(part.getKey(), part);
+            addBytes(sizeOf(part));
+            thumbnailsDrawListDirty = true;
         }
 
     }
 
+    /**
+     * Return true if already contains the described PagePart, moving it to the active set
+     */
     public boolean upPartIfContained(int userPage, int page, float width, float height, RectF pageRelativeBounds, int toOrder) {
-        PagePart fakePart = new PagePart(userPage, page, null, width, height, pageRelativeBounds, false, 0);
-
-        PagePart found;
+        long key = PagePart.keyOf(userPage, page, width, height, pageRelativeBounds);
         synchronized (passiveActiveLock) {
-            if ((found = find(passiveCache, fakePart)) != null) {
-                passiveCache.remove(found);
+            PagePart found = partsIndex.get(key);
+            boolean hit = found != null && found.matches(userPage, page, width, height, pageRelativeBounds);
+            if (metrics.isEnabled()) {
+                metrics.recordCacheLookup(hit);
+            }
+            if (!hit) {
+                return false;
+            }
+            if (passiveCache.remove(found)) {
                 found.setCacheOrder(toOrder);
-                activeCache.offer(found);
-                return true;
+                activeCache.add(found);
             }
-
-            return find(activeCache, fakePart) != null;
+            return true;
         }
     }
 
@@ -112,67 +301,177 @@ class CacheManager {
      * Return true if already contains the described PagePart
      */
     public boolean containsThumbnail(int userPage, int page, float width, float height, RectF pageRelativeBounds) {
-        PagePart fakePart = new PagePart(userPage, page, null, width, height, pageRelativeBounds, true, 0);
+        long key = PagePart.keyOf(userPage, page, width, height, pageRelativeBounds);
         synchronized (thumbnails) {
-            for (PagePart part : thumbnails) {
-                if (part.equals(fakePart)) {
-                    return true;
-                }
-            }
-            return false;
+            PagePart found = thumbnailsIndex.get(key);
+            return found != null && found.matches(userPage, page, width, height, pageRelativeBounds);
         }
     }
 
-    @Nullable
-    private static PagePart find(PriorityQueue<PagePart> vector, PagePart fakePart) {
-        for (PagePart part : vector) {
-            if (part.equals(fakePart)) {
-                return part;
-            }
+    /**
+     * Return the cached parts, the coarsest first. The array is shared until the cache changes,
+     * so drawing the same cache again allocates nothing. It must not be modified.
+     */
+    public PagePart[] getDrawList() {
+        synchronized (passiveActiveLock) {
+            updateDrawLists();
+            return drawList;
         }
-        return null;
     }
 
-    public List<PagePart> getPageParts() {
+    /**
+     * Return the cached parts of a page, the coarsest first, shared like {@link #getDrawList()}
+     */
+    public PagePart[] getPageDrawList(int userPage) {
         synchronized (passiveActiveLock) {
-            List<PagePart> parts = new ArrayList<>(passiveCache);
-            parts.addAll(activeCache);
-            return parts;
+            updateDrawLists();
+            PagePart[] parts = pageDrawLists.get(userPage);
+            return parts != null ? parts : NO_PARTS;
+        }
+    }
+
+    private void updateDrawLists() {
+        if (!drawListDirty) {
+            return;
+        }
+        PagePart[] parts = new PagePart[passiveCache.size() + activeCache.size()];
+        int i = 0;
+        for (PagePart part : passiveCache) {
+            parts[i++] = part;
+        }
+        for (PagePart part : activeCache) {
+            parts[i++] = part;
+        }
+        Arrays.sort(parts, RESOLUTION_COMPARATOR);
+
+        SparseArray<List<PagePart>> pages = new SparseArray<>();
+        for (PagePart part : parts) {
+            List<PagePart> pageParts = pages.get(part.getUserPage());
+            if (pageParts == null) {
+                pageParts = new ArrayList<>();
+                pages.put(part.getUserPage(), pageParts);
+            }
+            pageParts.add(part);
+        }
+        SparseArray<PagePart[]> pageLists = new SparseArray<>(pages.size());
+        for (int page = 0; page < pages.size(); page++) {
+            List<PagePart> pageParts = pages.valueAt(page);
+            pageLists.put(pages.keyAt(page), pageParts.toArray(new PagePart[pageParts.size()]));
         }
+
+        drawList = parts;
+        pageDrawLists = pageLists;
+        drawListDirty = false;
     }
 
-    public List<PagePart> getThumbnails() {
+    /**
+     * Return true if the cached parts of at least the given resolution cover the page relative area
+     *
+     * @param minResolution rendered pixels per page width
+     */
+    public boolean isCovered(int userPage, RectF area, float minResolution) {
+        if (area.isEmpty()) {
+            return true;
+        }
+        List<RectF> covering = new ArrayList<>();
+        for (PagePart part : getPageDrawList(userPage)) {
+            RectF bounds = part.getPageRelativeBounds();
+            if (resolutionOf(part) >= minResolution && RectF.intersects(bounds, area)) {
+                covering.add(bounds);
+            }
+        }
+        if (covering.isEmpty()) {
+            return false;
+        }
+        Collections.sort(covering, TOP_COMPARATOR);
+
+        // Between two consecutive vertical edges, the parts spanning the strip must cover it from top to bottom
+        float[] edges = new float[covering.size() * 2 + 2];
+        int count = 0;
+        edges[count++] = area.left;
+        edges[count++] = area.right;
+        for (RectF bounds : covering) {
+            if (bounds.left > area.left && bounds.left < area.right) {
+                edges[count++] = bounds.left;
+            }
+            if (bounds.right > area.left && bounds.right < area.right) {
+                edges[count++] = bounds.right;
+            }
+        }
+        Arrays.sort(edges, 0, count);
+        for (int i = 0; i + 1 < count; i++) {
+            if (edges[i + 1] - edges[i] <= COVERAGE_EPSILON) {
+                continue;
+            }
+            float x = (edges[i] + edges[i + 1]) / 2;
+            float reached = area.top;
+            for (RectF bounds : covering) {
+                if (bounds.left > x || bounds.right < x) {
+                    continue;
+                }
+                if (bounds.top > reached + COVERAGE_EPSILON) {
+                    break;
+                }
+                reached = Math.max(reached, bounds.bottom);
+            }
+            if (reached < area.bottom - COVERAGE_EPSILON) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Rendered pixels per page width
+     */
+    static float resolutionOf(PagePart part) {
+        return part.getWidth() / part.getPageRelativeBounds().width();
+    }
+
+    /**
+     * Return the cached thumbnails, shared like {@link #getDrawList()}
+     */
+    public PagePart[] getThumbnailsDrawList() {
         synchronized (thumbnails) {
-            return thumbnails;
+            if (thumbnailsDrawListDirty) {
+                thumbnailsDrawList = thumbnails.toArray(new PagePart[thumbnails.size()]);
+                thumbnailsDrawListDirty = false;
+            }
+            return thumbnailsDrawList;
         }
     }
 
     public void recycle() {
         synchronized (passiveActiveLock) {
             for (PagePart part : passiveCache) {
-                part.getRenderedBitmap().recycle();
+                recycleBitmap(part);
             }
             passiveCache.clear();
             for (PagePart part : activeCache) {
-                part.getRenderedBitmap().recycle();
+                recycleBitmap(part);
             }
             activeCache.clear();
+            partsIndex.clear();
+            drawList = NO_PARTS;
+            pageDrawLists = new SparseArray<>();
+            drawListDirty = false;
         }
         synchronized (thumbnails) {
             for (PagePart part : thumbnails) {
-                part.getRenderedBitmap().recycle();
+                recycleBitmap(part);
             }
             thumbnails.clear();
+            thumbnailsIndex.clear();
+            thumbnailsDrawList = NO_PARTS;
+            thumbnailsDrawListDirty = false;
         }
+        currentBytes.set(0);
+        bitmapPool.clear();
     }
 
-    class PagePartComparator implements Comparator<PagePart> {
-        @Override
-        public int compare(PagePart part1, PagePart part2) {
-            if (part1.getCacheOrder() == part2.getCacheOrder()) {
-                return 0;
-            }
-            return part1.getCacheOrder() > part2.getCacheOrder() ? 1 : -1;
+    private static void recycleBitmap(PagePart part) {
+        if (!part.isSolid()) {
+            part.getRenderedBitmap().recycle();
         }
     }
 
@@ -0,0 +1,339 @@
+package com.github.paperrose.pdfviewer;
+
+import android.graphics.Bitmap;
+import android.graphics.RectF;
+import android.os.Process;
+
+import com.github.paperrose.pdfviewer.model.PagePart;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Second tier of {@link CacheManager}: keeps the parts it evicts deflated in memory, so a part
+ * scrolled back to is inflated into a pooled bitmap instead of being rendered again.
+ * <p>
+ * The bitmap of an evicted part is handed to a background thread, which copies its pixels into a
+ * reused buffer, gives the bitmap back to the pool, then deflates the copy at
+ * {@link Deflater#BEST_SPEED}. Rendered pages are mostly flat paper,
+ * which deflate compresses well even at that level. Parts are dropped the least recently used first
+ * beyond the byte budget, and all of them when the document changes. Thread safe.
+ */
+class CompressedTileCache {
+
+    /**
+     * Evicted bitmaps beyond this go back to the pool without being kept, rather than
+     * holding more of them out of the pool
+     */
+    private static final int MAX_PENDING_COMPRESSIONS = 8;
+
+    private static final ThreadPoolExecutor COMPRESS_EXECUTOR = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "PDFView Tile Compression");
+        }
+    });
+
+    static {
+        COMPRESS_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Only used on the compression thread
+     */
+    private static final Deflater DEFLATER = new Deflater(Deflater.BEST_SPEED);
+
+    private static ByteBuffer pixelsBuffer = ByteBuffer.allocate(0);
+
+    private static byte[] deflateBuffer = new byte[64 * 1024];
+
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(0, 0.75f, true);
+
+    private final AtomicInteger pendingCompressions = new AtomicInteger();
+
+    private final RenderMetrics metrics;
+
+    private long maxBytes;
+
+    private long size;
+
+    /**
+     * Changes when the cache is cleared, so parts compressed meanwhile are dropped
+     */
+    private int generation;
+
+    private long hitCount;
+
+    private long missCount;
+
+    public CompressedTileCache(long maxBytes, RenderMetrics metrics) {
+        this.maxBytes = maxBytes;
+        this.metrics = metrics;
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trimToSize();
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getSizeBytes() {
+        return size;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Keep an evicted part. Takes its bitmap, which goes back to the given pool once its pixels are
+     * copied on the compression thread, so the caller neither copies nor holds a lock meanwhile.
+     */
+    public void put(PagePart part, final BitmapPool bitmapPool) {
+        final Bitmap bitmap = part.getRenderedBitmap();
+        if (bitmap == null) {
+            return;
+        }
+        final int expectedGeneration;
+        synchronized (this) {
+            // Inflated earlier and evicted again, the pixels are unchanged
+            Entry kept = entries.get(part.getKey());
+            if (maxBytes <= 0 || bitmap.isRecycled() || (kept != null && kept.matches(part.getUserPage(),
+                    part.getPage(), part.getWidth(), part.getHeight(), part.getPageRelativeBounds()))) {
+                bitmapPool.release(bitmap);
+                return;
+            }
+            expectedGeneration = generation;
+        }
+        if (pendingCompressions.incrementAndGet() > MAX_PENDING_COMPRESSIONS) {
+            pendingCompressions.decrementAndGet();
+            bitmapPool.release(bitmap);
+            return;
+        }
+        final Entry entry = new Entry(part, bitmap);
+
+        COMPRESS_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (!isGeneration(expectedGeneration)) {
+                        bitmapPool.release(bitmap);
+                        return;
+                    }
+                    int byteCount = copyPixels(bitmap);
+                    bitmapPool.release(bitmap);
+                    entry.data = deflate(pixelsBuffer.array(), byteCount);
+                    add(entry, expectedGeneration);
+                } finally {
+                    pendingCompressions.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    private synchronized boolean isGeneration(int expectedGeneration) {
+        return expectedGeneration == generation && maxBytes > 0;
+    }
+
+    /**
+     * Called on the compression thread only
+     *
+     * @return number of bytes copied to {@link #pixelsBuffer}
+     */
+    private static int copyPixels(Bitmap bitmap) {
+        int byteCount = bitmap.getByteCount();
+        if (pixelsBuffer.capacity() < byteCount) {
+            pixelsBuffer = ByteBuffer.allocate(byteCount);
+        }
+        pixelsBuffer.clear();
+        bitmap.copyPixelsToBuffer(pixelsBuffer);
+        return byteCount;
+    }
+
+    /**
+     * Called on the compression thread only
+     */
+    private static byte[] deflate(byte[] pixels, int length) {
+        DEFLATER.reset();
+        DEFLATER.setInput(pixels, 0, length);
+        DEFLATER.finish();
+        int deflated = 0;
+        while (!DEFLATER.finished()) {
+            if (deflated == deflateBuffer.length) {
+                deflateBuffer = Arrays.copyOf(deflateBuffer, deflateBuffer.length * 2);
+            }
+            deflated += DEFLATER.deflate(deflateBuffer, deflated, deflateBuffer.length - deflated);
+        }
+        return Arrays.copyOf(deflateBuffer, deflated);
+    }
+
+    private synchronized void add(Entry entry, int expectedGeneration) {
+        if (expectedGeneration != generation || maxBytes <= 0) {
+            return;
+        }
+        Entry previous = entries.put(entry.key, entry);
+        if (previous != null) {
+            size -= previous.data.length;
+        }
+        size += entry.data.length;
+        trimToSize();
+    }
+
+    private void trimToSize() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (size > maxBytes && iterator.hasNext()) {
+            size -= iterator.next().data.length;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Inflate a kept part into a pooled bitmap, the part stays kept
+     *
+     * @param decoder decoder of the calling worker
+     * @return the bitmap, or null if the part is not kept
+     */
+    public Bitmap get(int userPage, int page, float width, float height, RectF bounds, BitmapPool bitmapPool, Decoder decoder) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(PagePart.keyOf(userPage, page, width, height, bounds));
+            if (entry == null || !entry.matches(userPage, page, width, height, bounds)) {
+                missCount++;
+                if (metrics.isEnabled()) {
+                    metrics.recordCompressedLookup(false);
+                }
+                return null;
+            }
+        }
+
+        boolean timed = metrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
+        Bitmap bitmap = bitmapPool.acquire(entry.bitmapWidth, entry.bitmapHeight, entry.config);
+        ByteBuffer pixels = decoder.inflate(entry.data, bitmap.getByteCount());
+        if (pixels == null) {
+            bitmapPool.release(bitmap);
+            remove(entry);
+            return null;
+        }
+        bitmap.copyPixelsFromBuffer(pixels);
+        synchronized (this) {
+            hitCount++;
+        }
+        if (timed) {
+            metrics.recordCompressedLookup(true);
+            metrics.recordCompressedDecode(System.nanoTime() - start);
+        }
+        return bitmap;
+    }
+
+    private synchronized void remove(Entry entry) {
+        if (entries.get(entry.key) == entry) {
+            entries.remove(entry.key);
+            size -= entry.data.length;
+        }
+    }
+
+    /**
+     * Drop all the parts, the ones being compressed included
+     */
+    public synchronized void clear() {
+        generation++;
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * Inflater and pixels buffer reused by a worker, {@link #end()} it when the worker stops
+     */
+    static class Decoder {
+
+        private final Inflater inflater = new Inflater();
+
+        private ByteBuffer pixels = ByteBuffer.allocate(0);
+
+        /**
+         * @return the inflated pixels, or null if the data is corrupted
+         */
+        ByteBuffer inflate(byte[] data, int byteCount) {
+            if (pixels.capacity() < byteCount) {
+                pixels = ByteBuffer.allocate(byteCount);
+            }
+            pixels.clear();
+            pixels.limit(byteCount);
+            inflater.reset();
+            inflater.setInput(data);
+            try {
+                if (inflater.inflate(pixels.array(), 0, byteCount) != byteCount) {
+                    return null;
+                }
+            } catch (DataFormatException e) {
+                return null;
+            }
+            return pixels;
+        }
+
+        void end() {
+            inflater.end();
+        }
+    }
+
+    private static class Entry {
+
+        final long key;
+
+        final int userPage, page;
+
+        final float width, height;
+
+        final RectF bounds;
+
+        final int bitmapWidth, bitmapHeight;
+
+        final Bitmap.Config config;
+
+        byte[] data;
+
+        Entry(PagePart part, Bitmap bitmap) {
+            key = part.getKey();
+            userPage = part.getUserPage();
+            page = part.getPage();
+            width = part.getWidth();
+            height = part.getHeight();
+            bounds = new RectF(part.getPageRelativeBounds());
+            bitmapWidth = bitmap.getWidth();
+            bitmapHeight = bitmap.getHeight();
+            config = bitmap.getConfig();
+        }
+
+        boolean matches(int userPage, int page, float width, float height, RectF bounds) {
+            return this.userPage == userPage && this.page == page
+                    && this.width == width && this.height == height
+                    && this.bounds.left == bounds.left && this.bounds.top == bounds.top
+                    && this.bounds.right == bounds.right && this.bounds.bottom == bounds.bottom;
+        }
+    }
+}
@@ -20,16 +20,23 @@ import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.ParcelFileDescriptor;
 
+import com.github.paperrose.pdfviewer.render.PageRenderer;
 import com.github.paperrose.pdfviewer.util.CryptLab;
+import com.github.paperrose.pdfviewer.util.DocumentFingerprint;
 import com.github.paperrose.pdfviewer.util.FileUtils;
-import com.shockwave.pdfium.PdfDocument;
-import com.shockwave.pdfium.PdfiumCore;
 
 import java.io.File;
 import java.io.IOException;
+import java.security.GeneralSecurityException;
 
 class DecodingAsyncTask extends AsyncTask<Void, Void, Throwable> {
 
+    private static final String DECRYPTED_PREFIX = "pdfview-";
+
+    private static final String DECRYPTED_SUFFIX = ".pdf";
+
+    private static boolean staleDecryptedDeleted;
+
     private boolean cancelled;
 
     private String path;
@@ -42,26 +49,32 @@ class DecodingAsyncTask extends AsyncTask<Void, Void, Throwable> {
 
 
     private Context context;
-    private PdfiumCore pdfiumCore;
-    private PdfDocument pdfDocument;
+    private PageRenderer pageRenderer;
+    private DocumentRegistry.Entry document;
     private String password;
+    private String fingerprint;
 
-    public DecodingAsyncTask(String path, boolean isAsset, String password, PDFView pdfView, PdfiumCore pdfiumCore) {
+    /**
+     * Time spent opening the document, in nanoseconds
+     */
+    private long decodeNanos;
+
+    public DecodingAsyncTask(String path, boolean isAsset, String password, PDFView pdfView, PageRenderer pageRenderer) {
         this.cancelled = false;
         this.pdfView = pdfView;
         this.isAsset = isAsset;
         this.isByteArray = false;
         this.password = password;
-        this.pdfiumCore = pdfiumCore;
+        this.pageRenderer = pageRenderer;
         this.path = path;
         context = pdfView.getContext();
     }
 
-    public DecodingAsyncTask(byte[] fileBytes, String password, PDFView pdfView, PdfiumCore pdfiumCore) {
+    public DecodingAsyncTask(byte[] fileBytes, String password, PDFView pdfView, PageRenderer pageRenderer) {
         this.cancelled = false;
         this.pdfView = pdfView;
         this.password = password;
-        this.pdfiumCore = pdfiumCore;
+        this.pageRenderer = pageRenderer;
         this.isByteArray = true;
         this.fileBytes = fileBytes;
         context = pdfView.getContext();
@@ -69,30 +82,126 @@ class DecodingAsyncTask extends AsyncTask<Void, Void, Throwable> {
 
     @Override
     protected Throwable doInBackground(Void... params) {
+        long start = System.nanoTime();
         try {
-            if (cancelled)
+            if (isCancelled())
                 return null;
+            DocumentRegistry registry = DocumentRegistry.getInstance();
             if (isByteArray) {
+                fingerprint = DocumentFingerprint.of(fileBytes);
+                String key = DocumentRegistry.keyOf(fingerprint, password);
+                document = registry.acquire(key);
+                if (document != null) {
+                    return null;
+                }
                 if (password != null) {
-                    fileBytes = CryptLab.decodeAES(fileBytes, password);
-                    if (cancelled)
+                    ParcelFileDescriptor fd = openDecrypted(fileBytes, password);
+                    if (fd == null)
                         return null;
+                    document = register(key, fd, null, fileBytes.length);
+                } else {
+                    // Registered without source, keeping the bytes to open them again would hold
+                    // the whole document on the heap, so its opened pages are never released
+                    PageRenderer.Document handle = pageRenderer.open(fileBytes, null);
+                    document = registry.register(key, handle, fileBytes.length);
                 }
-                pdfDocument = pdfiumCore.newDocument(fileBytes);
                 //TODO - encodeAES in example
             } else {
                 if (isAsset) {
                     path = FileUtils.fileFromAsset(context, path).getAbsolutePath();
                 }
 
-                pdfDocument = pdfiumCore.newDocument(getSeekableFileDescriptor(path), password);
+                File file = new File(path);
+                ParcelFileDescriptor fd = null;
+                long size;
+                if (file.exists()) {
+                    fingerprint = DocumentFingerprint.of(file);
+                    size = file.length();
+                } else {
+                    fd = getSeekableFileDescriptor(path);
+                    size = fd.getStatSize();
+                    fingerprint = DocumentFingerprint.of(path, size);
+                }
+                String key = DocumentRegistry.keyOf(fingerprint, password);
+                document = registry.acquire(key);
+                if (document != null) {
+                    if (fd != null) {
+                        fd.close();
+                    }
+                    return null;
+                }
+                if (fd == null) {
+                    fd = getSeekableFileDescriptor(path);
+                }
+                document = register(key, fd, password, size);
             }
 
             return null;
         } catch (Throwable t) {
             t.printStackTrace();
             return t;
+        } finally {
+            decodeNanos = System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Decrypt into a temporary file and let pdfium read it through a descriptor, instead of holding
+     * the encrypted and the decrypted documents on the heap. The file is deleted once opened,
+     * the descriptor keeps it readable by pdfium only.
+     *
+     * @return descriptor of the decrypted document, or null if the task was cancelled
+     */
+    private ParcelFileDescriptor openDecrypted(byte[] encrypted, String password) throws IOException, GeneralSecurityException {
+        File cacheDir = context.getCacheDir();
+        deleteStaleDecrypted(cacheDir);
+        File decrypted = File.createTempFile(DECRYPTED_PREFIX, DECRYPTED_SUFFIX, cacheDir);
+        try {
+            CryptLab.decodeAES(encrypted, password, decrypted);
+            if (isCancelled()) {
+                return null;
+            }
+            return ParcelFileDescriptor.open(decrypted, ParcelFileDescriptor.MODE_READ_ONLY);
+        } finally {
+            decrypted.delete();
+        }
+    }
+
+    /**
+     * Delete the decrypted documents a previous process left behind, dying before deleting them.
+     * Done once, before this process decrypts any document, so none in use is deleted.
+     */
+    private static synchronized void deleteStaleDecrypted(File cacheDir) {
+        if (staleDecryptedDeleted) {
+            return;
+        }
+        staleDecryptedDeleted = true;
+        File[] files = cacheDir.listFiles();
+        if (files == null) {
+            return;
         }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(DECRYPTED_PREFIX) && name.endsWith(DECRYPTED_SUFFIX)) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Open and register the document, keeping a duplicate of the descriptor so the registry can open it again
+     */
+    private DocumentRegistry.Entry register(String key, ParcelFileDescriptor fd, String password, long size) throws IOException {
+        ParcelFileDescriptor reopenFd = fd.dup();
+        PageRenderer.Document handle;
+        try {
+            handle = pageRenderer.open(fd, password);
+        } catch (IOException | RuntimeException e) {
+            reopenFd.close();
+            throw e;
+        }
+        return DocumentRegistry.getInstance().register(key, handle, size,
+                new FileDescriptorSource(pageRenderer, reopenFd, password));
     }
 
     protected ParcelFileDescriptor getSeekableFileDescriptor(String path) throws IOException {
@@ -125,12 +234,58 @@ class DecodingAsyncTask extends AsyncTask<Void, Void, Throwable> {
             return;
         }
         if (!cancelled) {
-            pdfView.loadCompleteWithCheck(pdfDocument, isByteArray);
+            pdfView.renderMetrics.recordDecode(decodeNanos);
+            // Parts of protected documents would be readable in plain from the disk cache, the
+            // fingerprint enables it so they get none
+            pdfView.setDocumentFingerprint(password == null ? fingerprint : null);
+            pdfView.loadCompleteWithCheck(document);
+        } else if (document != null) {
+            DocumentRegistry.getInstance().release(document);
         }
     }
 
     @Override
     protected void onCancelled() {
         cancelled = true;
+        if (document != null) {
+            DocumentRegistry.getInstance().release(document);
+            document = null;
+        }
+    }
+
+    private static class FileDescriptorSource implements DocumentRegistry.Source {
+
+        private final PageRenderer pageRenderer;
+
+        private final ParcelFileDescriptor fd;
+
+        private final String password;
+
+        FileDescriptorSource(PageRenderer pageRenderer, ParcelFileDescriptor fd, String password) {
+            this.pageRenderer = pageRenderer;
+            this.fd = fd;
+            this.password = password;
+        }
+
+        @Override
+        public PageRenderer.Document open() throws IOException {
+            // The document owns and closes the descriptor it is given
+            ParcelFileDescriptor documentFd = fd.dup();
+            try {
+                return pageRenderer.open(documentFd, password);
+            } catch (IOException e) {
+                documentFd.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                fd.close();
+            } catch (IOException e) {
+                // Nothing to do
+            }
+        }
     }
 }
@@ -0,0 +1,472 @@
+package com.github.paperrose.pdfviewer;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.RectF;
+import android.util.Log;
+
+import com.github.paperrose.pdfviewer.model.PagePart;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps rendered parts in the cache directory so a document opened again is shown without pdfium.
+ * <p>
+ * A tile is stored as a small header followed by the raw pixels of its bitmap, and is read back
+ * through a memory mapped buffer. Writes go to a temporary file, renamed once complete, and are
+ * then recorded in a journal. The journal is replayed on first use to rebuild the least recently
+ * used order, and files it does not know about, like the ones of an interrupted write, are deleted.
+ * <p>
+ * One instance is shared by the process, it is thread safe.
+ */
+class DiskTileCache {
+
+    private static final String TAG = DiskTileCache.class.getSimpleName();
+
+    private static final String DIRECTORY = "pdfviewer-tiles";
+
+    private static final String JOURNAL = "journal";
+
+    private static final String JOURNAL_TMP = "journal.tmp";
+
+    private static final String JOURNAL_MAGIC = "com.github.paperrose.pdfviewer.DiskTileCache";
+
+    private static final String JOURNAL_VERSION = "1";
+
+    private static final String CLEAN = "CLEAN";
+
+    private static final String REMOVE = "REMOVE";
+
+    private static final String READ = "READ";
+
+    private static final String TILE_SUFFIX = ".tile";
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private static final int TILE_MAGIC = 0x50445454;
+
+    /**
+     * magic, page, width, height, 4 bounds, bitmap width, bitmap height, config
+     */
+    private static final int HEADER_SIZE = 11 * 4;
+
+    /**
+     * Writes beyond this are skipped rather than holding more pixel copies in memory
+     */
+    private static final int MAX_PENDING_WRITES = 8;
+
+    /**
+     * The journal is compacted once it holds that many more lines than entries
+     */
+    private static final int REDUNDANT_OPS_COMPACT_THRESHOLD = 2000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static DiskTileCache instance;
+
+    private final File directory;
+
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(0, 0.75f, true);
+
+    private final ThreadPoolExecutor writeExecutor;
+
+    private final AtomicInteger pendingWrites = new AtomicInteger();
+
+    private long maxBytes;
+
+    private long size;
+
+    private int redundantOps;
+
+    private Writer journalWriter;
+
+    private boolean initialized;
+
+    private long hitCount;
+
+    private long missCount;
+
+    private DiskTileCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        writeExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "PDFView Disk Cache");
+            }
+        });
+        writeExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Return the process wide cache, applying the given size limit
+     */
+    public static synchronized DiskTileCache open(Context context, long maxBytes) {
+        if (instance == null) {
+            instance = new DiskTileCache(new File(context.getCacheDir(), DIRECTORY), maxBytes);
+        } else {
+            instance.setMaxBytes(maxBytes);
+        }
+        return instance;
+    }
+
+    /**
+     * Key of a tile of the given document, the render size encodes the zoom level
+     */
+    public static String keyOf(String fingerprint, int page, float width, float height, RectF bounds,
+                               boolean bestQuality, boolean annotationRendering) {
+        long key = PagePart.keyOf(0, page, width, height, bounds);
+        key = key * 31 + (bestQuality ? 1 : 0) + (annotationRendering ? 2 : 0);
+        return fingerprint + "-" + Long.toHexString(key);
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        if (initialized) {
+            trimToSize();
+        }
+    }
+
+    public synchronized long getSizeBytes() {
+        return size;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Read a tile into a pooled bitmap
+     *
+     * @return the bitmap, or null if the tile is not cached or doesn't match the given part
+     */
+    public Bitmap get(String key, int page, float width, float height, RectF bounds, BitmapPool bitmapPool) {
+        synchronized (this) {
+            if (!initialize() || entries.get(key) == null) {
+                missCount++;
+                return null;
+            }
+            appendJournal(READ, key);
+        }
+
+        Bitmap bitmap = null;
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(tileFile(key), "r");
+            FileChannel channel = file.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != TILE_MAGIC || buffer.getInt() != page
+                    || buffer.getFloat() != width || buffer.getFloat() != height
+                    || buffer.getFloat() != bounds.left || buffer.getFloat() != bounds.top
+                    || buffer.getFloat() != bounds.right || buffer.getFloat() != bounds.bottom) {
+                throw new IOException("Tile does not match " + key);
+            }
+            int bitmapWidth = buffer.getInt();
+            int bitmapHeight = buffer.getInt();
+            int config = buffer.getInt();
+            if (config < 0 || config >= Bitmap.Config.values().length) {
+                throw new IOException("Invalid tile config " + config);
+            }
+            bitmap = bitmapPool.acquire(bitmapWidth, bitmapHeight, Bitmap.Config.values()[config]);
+            if (buffer.remaining() < bitmap.getByteCount()) {
+                throw new IOException("Truncated tile " + key);
+            }
+            bitmap.copyPixelsFromBuffer(buffer);
+            synchronized (this) {
+                hitCount++;
+            }
+            return bitmap;
+        } catch (ClosedByInterruptException e) {
+            // The rendering task was cancelled while reading, the tile is kept
+            bitmapPool.release(bitmap);
+            synchronized (this) {
+                missCount++;
+            }
+            return null;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Cannot read tile " + key, e);
+            bitmapPool.release(bitmap);
+            synchronized (this) {
+                missCount++;
+                remove(key);
+            }
+            return null;
+        } finally {
+            closeQuietly(file);
+        }
+    }
+
+    /**
+     * Store a rendered tile in the background, the pixels are copied before returning
+     */
+    public void put(final String key, final int page, final float width, final float height, RectF bounds, Bitmap bitmap) {
+        synchronized (this) {
+            if (maxBytes <= 0 || entries.containsKey(key)) {
+                return;
+            }
+        }
+        if (pendingWrites.incrementAndGet() > MAX_PENDING_WRITES) {
+            pendingWrites.decrementAndGet();
+            return;
+        }
+        final ByteBuffer data = ByteBuffer.allocate(HEADER_SIZE + bitmap.getByteCount());
+        data.putInt(TILE_MAGIC).putInt(page).putFloat(width).putFloat(height)
+                .putFloat(bounds.left).putFloat(bounds.top).putFloat(bounds.right).putFloat(bounds.bottom)
+                .putInt(bitmap.getWidth()).putInt(bitmap.getHeight()).putInt(bitmap.getConfig().ordinal());
+        bitmap.copyPixelsToBuffer(data);
+        data.flip();
+
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(key, data);
+                } finally {
+                    pendingWrites.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    private void write(String key, ByteBuffer data) {
+        synchronized (this) {
+            if (!initialize()) {
+                return;
+            }
+        }
+        File tmp = new File(directory, key + TMP_SUFFIX);
+        FileOutputStream output = null;
+        try {
+            output = new FileOutputStream(tmp);
+            FileChannel channel = output.getChannel();
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            output.getFD().sync();
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot write tile " + key, e);
+            closeQuietly(output);
+            output = null;
+            tmp.delete();
+            return;
+        } finally {
+            closeQuietly(output);
+        }
+
+        synchronized (this) {
+            File file = tileFile(key);
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                return;
+            }
+            Long previous = entries.put(key, file.length());
+            if (previous != null) {
+                size -= previous;
+            }
+            size += file.length();
+            appendJournal(CLEAN, key + " " + file.length());
+            trimToSize();
+        }
+    }
+
+    /**
+     * Delete every stored tile
+     */
+    public synchronized void clear() {
+        closeQuietly(journalWriter);
+        journalWriter = null;
+        deleteContents(directory);
+        entries.clear();
+        size = 0;
+        redundantOps = 0;
+        initialized = false;
+    }
+
+    private void remove(String key) {
+        Long length = entries.remove(key);
+        if (length != null) {
+            size -= length;
+            tileFile(key).delete();
+            appendJournal(REMOVE, key);
+        }
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (size > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            size -= eldest.getValue();
+            tileFile(eldest.getKey()).delete();
+            appendJournal(REMOVE, eldest.getKey());
+        }
+    }
+
+    /**
+     * Replay the journal on first use, start from an empty directory if it is unreadable
+     *
+     * @return true if the cache can be used
+     */
+    private boolean initialize() {
+        if (initialized) {
+            return journalWriter != null;
+        }
+        initialized = true;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return false;
+        }
+        try {
+            readJournal();
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot read the journal, clearing the tiles", e);
+            deleteContents(directory);
+            entries.clear();
+            size = 0;
+        }
+
+        // Files unknown to the journal were not completely written
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.equals(JOURNAL)) {
+                    continue;
+                }
+                if (!name.endsWith(TILE_SUFFIX) || !entries.containsKey(name.substring(0, name.length() - TILE_SUFFIX.length()))) {
+                    file.delete();
+                }
+            }
+        }
+
+        try {
+            rebuildJournal();
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot write the journal, disabling the disk cache", e);
+            return false;
+        }
+        trimToSize();
+        return true;
+    }
+
+    private void readJournal() throws IOException {
+        File journal = new File(directory, JOURNAL);
+        if (!journal.exists()) {
+            return;
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journal), UTF_8));
+        try {
+            if (!JOURNAL_MAGIC.equals(reader.readLine()) || !JOURNAL_VERSION.equals(reader.readLine())) {
+                throw new IOException("Unexpected journal header");
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(" ");
+                if (parts.length == 3 && CLEAN.equals(parts[0])) {
+                    Long previous = entries.put(parts[1], Long.parseLong(parts[2]));
+                    size += Long.parseLong(parts[2]) - (previous != null ? previous : 0);
+                } else if (parts.length == 2 && REMOVE.equals(parts[0])) {
+                    Long previous = entries.remove(parts[1]);
+                    size -= previous != null ? previous : 0;
+                } else if (parts.length == 2 && READ.equals(parts[0])) {
+                    entries.get(parts[1]);
+                } else {
+                    // Last line of an interrupted append
+                    break;
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException(e);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Write a journal holding only the current entries, in least recently used order
+     */
+    private void rebuildJournal() throws IOException {
+        closeQuietly(journalWriter);
+        journalWriter = null;
+        File tmp = new File(directory, JOURNAL_TMP);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), UTF_8));
+        try {
+            writer.write(JOURNAL_MAGIC + "\n" + JOURNAL_VERSION + "\n");
+            for (Map.Entry<String, Long> entry : entries.entrySet()) {
+                writer.write(CLEAN + " " + entry.getKey() + " " + entry.getValue() + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+        if (!tmp.renameTo(new File(directory, JOURNAL))) {
+            throw new IOException("Cannot rename " + tmp);
+        }
+        journalWriter = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(new File(directory, JOURNAL), true), UTF_8));
+        redundantOps = 0;
+    }
+
+    private void appendJournal(String op, String args) {
+        if (journalWriter == null) {
+            return;
+        }
+        try {
+            journalWriter.write(op + " " + args + "\n");
+            journalWriter.flush();
+            if (++redundantOps >= REDUNDANT_OPS_COMPACT_THRESHOLD && redundantOps >= entries.size()) {
+                rebuildJournal();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot append to the journal", e);
+        }
+    }
+
+    private File tileFile(String key) {
+        return new File(directory, key + TILE_SUFFIX);
+    }
+
+    private static void deleteContents(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
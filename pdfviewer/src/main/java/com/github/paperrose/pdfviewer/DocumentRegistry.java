@@ -0,0 +1,293 @@
+package com.github.paperrose.pdfviewer;
+
+import com.github.paperrose.pdfviewer.render.PageRenderer;
+import com.github.paperrose.pdfviewer.util.Constants;
+import com.github.paperrose.pdfviewer.util.DocumentFingerprint;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Process wide registry of opened documents, so views showing the same document share one handle.
+ * <p>
+ * Documents are keyed by their {@link DocumentFingerprint} and password and are reference counted.
+ * A document no view uses anymore stays open while the documents in that state fit in
+ * {@link Constants.Cache#DOCUMENT_REGISTRY_SIZE}, the least recently released is closed first.
+ */
+class DocumentRegistry {
+
+    private static final String TAG = DocumentRegistry.class.getSimpleName();
+
+    private static final DocumentRegistry INSTANCE = new DocumentRegistry(Constants.Cache.DOCUMENT_REGISTRY_SIZE);
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /**
+     * Entries without any reference, the least recently released first
+     */
+    private final LinkedHashMap<String, Entry> idleEntries = new LinkedHashMap<>();
+
+    private final long maxIdleBytes;
+
+    private long idleBytes;
+
+    private DocumentRegistry(long maxIdleBytes) {
+        this.maxIdleBytes = maxIdleBytes;
+    }
+
+    public static DocumentRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    public static String keyOf(String fingerprint, String password) {
+        if (password == null) {
+            return fingerprint;
+        }
+        return fingerprint + "-" + DocumentFingerprint.of(password.getBytes(Charset.forName("UTF-8")));
+    }
+
+    /**
+     * Take a reference on an opened document
+     *
+     * @return the document, or null if it is not opened
+     */
+    public synchronized Entry acquire(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.refCount++ == 0) {
+            idleEntries.remove(key);
+            idleBytes -= entry.size;
+        }
+        return entry;
+    }
+
+    /**
+     * Register a document that can't be opened again, its opened pages are never released
+     *
+     * @see #register(String, PageRenderer.Document, long, Source)
+     */
+    public Entry register(String key, PageRenderer.Document handle, long size) {
+        return register(key, handle, size, null);
+    }
+
+    /**
+     * Register a document just opened, with a first reference on it.
+     * If another view opened it meanwhile, the given document and source are closed and the registered one returned.
+     *
+     * @param size   number of bytes of the document, counted against the idle budget
+     * @param source opens the document again to release its opened pages, may be null
+     */
+    public Entry register(String key, PageRenderer.Document handle, long size, Source source) {
+        Entry registered;
+        synchronized (this) {
+            registered = acquire(key);
+            if (registered == null) {
+                Entry entry = new Entry(key, handle, size, source);
+                entry.refCount = 1;
+                entries.put(key, entry);
+                return entry;
+            }
+        }
+        handle.close();
+        if (source != null) {
+            source.close();
+        }
+        return registered;
+    }
+
+    /**
+     * Register a document opened by the caller, with a first reference on it. It is not shared with
+     * other views, can't be opened again and is closed as soon as it is released.
+     */
+    public Entry register(PageRenderer.Document handle) {
+        Entry entry = new Entry(null, handle, 0, null);
+        synchronized (this) {
+            entry.refCount = 1;
+        }
+        return entry;
+    }
+
+    /**
+     * Drop a reference taken by {@link #acquire(String)} or one of the register methods
+     */
+    public void release(Entry entry) {
+        List<Entry> evicted = new ArrayList<>();
+        synchronized (this) {
+            if (--entry.refCount > 0) {
+                return;
+            }
+            if (entry.key == null) {
+                // Not shared, nobody can acquire it again
+                evicted.add(entry);
+            } else {
+                idleEntries.put(entry.key, entry);
+                idleBytes += entry.size;
+                Iterator<Entry> iterator = idleEntries.values().iterator();
+                while (idleBytes > maxIdleBytes && iterator.hasNext()) {
+                    Entry eldest = iterator.next();
+                    iterator.remove();
+                    entries.remove(eldest.key);
+                    idleBytes -= eldest.size;
+                    evicted.add(eldest);
+                }
+            }
+        }
+        for (Entry eldest : evicted) {
+            eldest.close();
+        }
+    }
+
+    /**
+     * Opens a registered document again, so its handle can be recycled
+     */
+    interface Source {
+
+        PageRenderer.Document open() throws IOException;
+
+        void close();
+    }
+
+    /**
+     * An opened document. Pages are opened once for all the views,
+     * and renderer calls on the document are made holding {@link #lock}.
+     * <p>
+     * pdfium can't close a single page, so opened pages are bounded by recycling the handle:
+     * once they would exceed {@link #setMaxPagesBytes(long)}, the document is opened again from its source
+     * and only the most recently used half of the pages is opened on the new handle.
+     */
+    static class Entry {
+
+        final String key;
+
+        /**
+         * Changes when the handle is recycled, read it holding {@link #lock}
+         */
+        PageRenderer.Document handle;
+
+        final long size;
+
+        final Object lock = new Object();
+
+        private final Source source;
+
+        /**
+         * Opened pages, the least recently used first
+         */
+        private final LinkedHashMap<Integer, Boolean> openedPages = new LinkedHashMap<>(16, 0.75f, true);
+
+        private long maxPagesBytes = Constants.Cache.PAGE_HANDLES_SIZE;
+
+        private long recycleCount;
+
+        private boolean closed;
+
+        /**
+         * Guarded by the registry
+         */
+        private int refCount;
+
+        Entry(String key, PageRenderer.Document handle, long size, Source source) {
+            this.key = key;
+            this.handle = handle;
+            this.size = size;
+            this.source = source;
+        }
+
+        public void openPage(int page) {
+            synchronized (lock) {
+                if (closed || openedPages.get(page) != null) {
+                    return;
+                }
+                long pagesBytes = (openedPages.size() + 1) * Constants.Cache.PAGE_HANDLE_SIZE;
+                if (source != null && pagesBytes > maxPagesBytes && !openedPages.isEmpty()) {
+                    recycleHandle();
+                }
+                handle.openPage(page);
+                openedPages.put(page, Boolean.TRUE);
+            }
+        }
+
+        public void openPages(int fromPage, int toPage) {
+            synchronized (lock) {
+                for (int page = fromPage; page <= toPage; page++) {
+                    openPage(page);
+                }
+            }
+        }
+
+        /**
+         * Set the estimated native memory the opened pages may use,
+         * each page counting for {@link Constants.Cache#PAGE_HANDLE_SIZE}
+         */
+        public void setMaxPagesBytes(long maxPagesBytes) {
+            synchronized (lock) {
+                this.maxPagesBytes = maxPagesBytes;
+            }
+        }
+
+        public int getOpenPageCount() {
+            synchronized (lock) {
+                return openedPages.size();
+            }
+        }
+
+        /**
+         * @return number of times the handle was recycled to release opened pages
+         */
+        public long getRecycleCount() {
+            synchronized (lock) {
+                return recycleCount;
+            }
+        }
+
+        public boolean isClosed() {
+            synchronized (lock) {
+                return closed;
+            }
+        }
+
+        /**
+         * Open the document again and keep the most recently used half of the pages opened
+         */
+        private void recycleHandle() {
+            PageRenderer.Document reopened;
+            try {
+                reopened = source.open();
+            } catch (IOException e) {
+                // Keep the pages opened rather than failing the render
+                Log.e(TAG, "Cannot recycle the document handle", e);
+                return;
+            }
+            List<Integer> kept = new ArrayList<>(openedPages.keySet());
+            kept = kept.subList(kept.size() / 2, kept.size());
+            handle.close();
+            handle = reopened;
+            recycleCount++;
+            openedPages.clear();
+            for (int page : kept) {
+                handle.openPage(page);
+                openedPages.put(page, Boolean.TRUE);
+            }
+        }
+
+        private void close() {
+            synchronized (lock) {
+                closed = true;
+                openedPages.clear();
+                handle.close();
+                if (source != null) {
+                    source.close();
+                }
+            }
+        }
+    }
+}
@@ -20,10 +20,10 @@ import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.ParcelFileDescriptor;
 
+import com.github.paperrose.pdfviewer.render.PageRenderer;
 import com.github.paperrose.pdfviewer.util.CryptLab;
+import com.github.paperrose.pdfviewer.util.DocumentFingerprint;
 import com.github.paperrose.pdfviewer.util.FileUtils;
-import com.shockwave.pdfium.PdfDocument;
-import com.shockwave.pdfium.PdfiumCore;
 
 import java.io.File;
 import java.io.IOException;
@@ -45,51 +45,51 @@ class DoubleDecodingAsyncTask extends AsyncTask<Void, Void, Throwable> {
 
 
     private Context context;
-    private PdfiumCore pdfiumCore;
-    private PdfDocument pdfDocument;
-    private PdfDocument pdfRightDocument;
+    private PageRenderer pageRenderer;
+    private DocumentRegistry.Entry document;
+    private DocumentRegistry.Entry rightDocument;
     private String password;
 
-    public DoubleDecodingAsyncTask(String path, boolean isAsset, String password, DoublePDFView pdfView, PdfiumCore pdfiumCore) {
+    public DoubleDecodingAsyncTask(String path, boolean isAsset, String password, DoublePDFView pdfView, PageRenderer pageRenderer) {
         this.cancelled = false;
         this.pdfView = pdfView;
         this.isAsset = isAsset;
         this.isByteArray = false;
         this.password = password;
-        this.pdfiumCore = pdfiumCore;
+        this.pageRenderer = pageRenderer;
         this.path = path;
         context = pdfView.getContext();
     }
 
-    public DoubleDecodingAsyncTask(String lpath, String rpath, boolean isAsset, String password, DoublePDFView pdfView, PdfiumCore pdfiumCore) {
+    public DoubleDecodingAsyncTask(String lpath, String rpath, boolean isAsset, String password, DoublePDFView pdfView, PageRenderer pageRenderer) {
         this.cancelled = false;
         this.pdfView = pdfView;
         this.isAsset = isAsset;
         this.isByteArray = false;
         this.twoPageMode = true;
         this.password = password;
-        this.pdfiumCore = pdfiumCore;
+        this.pageRenderer = pageRenderer;
         this.path = lpath;
         this.rpath = rpath;
         context = pdfView.getContext();
     }
 
-    public DoubleDecodingAsyncTask(byte[] fileBytes, String password, DoublePDFView pdfView, PdfiumCore pdfiumCore) {
+    public DoubleDecodingAsyncTask(byte[] fileBytes, String password, DoublePDFView pdfView, PageRenderer pageRenderer) {
         this.cancelled = false;
         this.pdfView = pdfView;
         this.password = password;
-        this.pdfiumCore = pdfiumCore;
+        this.pageRenderer = pageRenderer;
         this.isByteArray = true;
         this.fileBytes = fileBytes;
         context = pdfView.getContext();
     }
 
-    public DoubleDecodingAsyncTask(byte[] leftBytes, byte[] rightBytes, String password, DoublePDFView pdfView, PdfiumCore pdfiumCore) {
+    public DoubleDecodingAsyncTask(byte[] leftBytes, byte[] rightBytes, String password, DoublePDFView pdfView, PageRenderer pageRenderer) {
         this.cancelled = false;
         this.twoPageMode = true;
         this.pdfView = pdfView;
         this.password = password;
-        this.pdfiumCore = pdfiumCore;
+        this.pageRenderer = pageRenderer;
         this.isByteArray = true;
         this.fileBytes = leftBytes;
         this.rightBytes = rightBytes;
@@ -103,30 +103,21 @@ class DoubleDecodingAsyncTask extends AsyncTask<Void, Void, Throwable> {
             if (cancelled)
                 return null;
             if (isByteArray) {
-                if (password != null) {
-                    fileBytes = CryptLab.decodeAES(fileBytes, password);
-                    if (cancelled)
-                        return null;
-                    if (twoPageMode) {
-                        rightBytes = CryptLab.decodeAES(rightBytes, password);
-                        if (cancelled)
-                            return null;
-                    }
-                    
-                }
-                pdfDocument = pdfiumCore.newDocument(fileBytes);
+                document = openDocument(fileBytes);
+                if (cancelled)
+                    return null;
                 if (twoPageMode) {
-                    pdfRightDocument = pdfiumCore.newDocument(rightBytes);
+                    rightDocument = openDocument(rightBytes);
                 }
             } else {
                 if (isAsset) {
                     path = FileUtils.fileFromAsset(context, path).getAbsolutePath();
                 }
 
-                pdfDocument = pdfiumCore.newDocument(getSeekableFileDescriptor(path), password);
+                document = openDocument(path);
                 if (twoPageMode) {
                     rpath = FileUtils.fileFromAsset(context, rpath).getAbsolutePath();
-                    pdfRightDocument = pdfiumCore.newDocument(getSeekableFileDescriptor(rpath), password);
+                    rightDocument = openDocument(rpath);
                 }
             }
 
@@ -136,6 +127,53 @@ class DoubleDecodingAsyncTask extends AsyncTask<Void, Void, Throwable> {
         }
     }
 
+    /**
+     * Take the document from the registry, or decrypt and open it
+     */
+    private DocumentRegistry.Entry openDocument(byte[] bytes) throws Exception {
+        String key = DocumentRegistry.keyOf(DocumentFingerprint.of(bytes), password);
+        DocumentRegistry.Entry entry = DocumentRegistry.getInstance().acquire(key);
+        if (entry != null) {
+            return entry;
+        }
+        if (password != null) {
+            bytes = CryptLab.decodeAESParallel(bytes, password);
+        }
+        PageRenderer.Document handle = pageRenderer.open(bytes, null);
+        return DocumentRegistry.getInstance().register(key, handle, bytes.length);
+    }
+
+    /**
+     * Take the document from the registry, or open it
+     */
+    private DocumentRegistry.Entry openDocument(String path) throws IOException {
+        File file = new File(path);
+        ParcelFileDescriptor fd = null;
+        long size;
+        String fingerprint;
+        if (file.exists()) {
+            fingerprint = DocumentFingerprint.of(file);
+            size = file.length();
+        } else {
+            fd = getSeekableFileDescriptor(path);
+            size = fd.getStatSize();
+            fingerprint = DocumentFingerprint.of(path, size);
+        }
+        String key = DocumentRegistry.keyOf(fingerprint, password);
+        DocumentRegistry.Entry entry = DocumentRegistry.getInstance().acquire(key);
+        if (entry != null) {
+            if (fd != null) {
+                fd.close();
+            }
+            return entry;
+        }
+        if (fd == null) {
+            fd = getSeekableFileDescriptor(path);
+        }
+        PageRenderer.Document handle = pageRenderer.open(fd, password);
+        return DocumentRegistry.getInstance().register(key, handle, size);
+    }
+
     protected ParcelFileDescriptor getSeekableFileDescriptor(String path) throws IOException {
         ParcelFileDescriptor pfd;
 
@@ -166,12 +204,26 @@ class DoubleDecodingAsyncTask extends AsyncTask<Void, Void, Throwable> {
             return;
         }
         if (!cancelled) {
-            pdfView.loadCompleteWithCheck(pdfDocument, pdfRightDocument, true);
+            pdfView.loadCompleteWithCheck(document, rightDocument, true);
+        } else {
+            releaseDocuments();
         }
     }
 
     @Override
     protected void onCancelled() {
         cancelled = true;
+        releaseDocuments();
+    }
+
+    private void releaseDocuments() {
+        if (document != null) {
+            DocumentRegistry.getInstance().release(document);
+            document = null;
+        }
+        if (rightDocument != null) {
+            DocumentRegistry.getInstance().release(rightDocument);
+            rightDocument = null;
+        }
     }
 }
@@ -40,12 +40,14 @@ import com.github.paperrose.pdfviewer.listener.OnLoadCompleteListener;
 import com.github.paperrose.pdfviewer.listener.OnPageChangeListener;
 import com.github.paperrose.pdfviewer.listener.OnPageScrollListener;
 import com.github.paperrose.pdfviewer.model.DoublePagePart;
+import com.github.paperrose.pdfviewer.render.PageRenderer;
+import com.github.paperrose.pdfviewer.render.PdfiumPageRenderer;
 import com.github.paperrose.pdfviewer.scroll.DoubleScrollHandle;
 import com.github.paperrose.pdfviewer.util.ArrayUtils;
 import com.github.paperrose.pdfviewer.util.Constants;
 import com.github.paperrose.pdfviewer.util.MathUtils;
 import com.shockwave.pdfium.PdfDocument;
-import com.shockwave.pdfium.PdfiumCore;
+import com.shockwave.pdfium.util.Size;
 
 import java.io.File;
 import java.io.IOException;
@@ -228,14 +230,16 @@ public class DoublePDFView extends RelativeLayout {
     private boolean swipeVertical = true;
 
     /**
-     * Pdfium core for loading and rendering PDFs
+     * Backend loading and rendering the documents
      */
-    private PdfiumCore pdfiumCore;
-
-    private PdfDocument pdfDocument;
+    private PageRenderer pageRenderer;
 
+    /**
+     * Registry entries of the loaded documents, released on recycle
+     */
+    private DocumentRegistry.Entry document;
 
-    private PdfDocument pdfRightDocument;
+    private DocumentRegistry.Entry rightDocument;
 
     private DoubleScrollHandle scrollHandle;
 
@@ -275,7 +279,7 @@ public class DoublePDFView extends RelativeLayout {
         debugPaint = new Paint();
         debugPaint.setStyle(Style.STROKE);
 
-        pdfiumCore = new PdfiumCore(context);
+        pageRenderer = new PdfiumPageRenderer(context);
         setWillNotDraw(false);
     }
 
@@ -303,13 +307,13 @@ public class DoublePDFView extends RelativeLayout {
             new Handler().postDelayed(new Runnable() {
                 @Override
                 public void run() {
-                    decodingAsyncTask = new DoubleDecodingAsyncTask(fBytes, fPassword, DoublePDFView.this, pdfiumCore);
+                    decodingAsyncTask = new DoubleDecodingAsyncTask(fBytes, fPassword, DoublePDFView.this, pageRenderer);
                     decodingAsyncTask.executeOnExecutor(DOWNLOAD_THREAD_POOL_EXECUTOR);
                 }
             }, 50);
         } else {
             try {
-                decodingAsyncTask = new DoubleDecodingAsyncTask(fileBytes, password, this, pdfiumCore);
+                decodingAsyncTask = new DoubleDecodingAsyncTask(fileBytes, password, this, pageRenderer);
                 decodingAsyncTask.executeOnExecutor(DOWNLOAD_THREAD_POOL_EXECUTOR);
             } catch (IllegalStateException e) {
                 clearThreads();
@@ -318,7 +322,7 @@ public class DoublePDFView extends RelativeLayout {
                 new Handler().postDelayed(new Runnable() {
                     @Override
                     public void run() {
-                        decodingAsyncTask = new DoubleDecodingAsyncTask(fBytes, fPassword, DoublePDFView.this, pdfiumCore);
+                        decodingAsyncTask = new DoubleDecodingAsyncTask(fBytes, fPassword, DoublePDFView.this, pageRenderer);
                         decodingAsyncTask.executeOnExecutor(DOWNLOAD_THREAD_POOL_EXECUTOR);
                     }
                 }, 50);
@@ -375,7 +379,7 @@ public class DoublePDFView extends RelativeLayout {
 
         recycled = false;
         // Start decoding document
-        decodingAsyncTask = new DoubleDecodingAsyncTask(leftBytes, rightBytes, password, this, pdfiumCore);
+        decodingAsyncTask = new DoubleDecodingAsyncTask(leftBytes, rightBytes, password, this, pageRenderer);
         decodingAsyncTask.executeOnExecutor(DOWNLOAD_THREAD_POOL_EXECUTOR);
     }
 
@@ -413,9 +417,9 @@ public class DoublePDFView extends RelativeLayout {
         recycled = false;
         // Start decoding document
         if (rpath != null) {
-            decodingAsyncTask = new DoubleDecodingAsyncTask(path, rpath, isAsset, password, this, pdfiumCore);
+            decodingAsyncTask = new DoubleDecodingAsyncTask(path, rpath, isAsset, password, this, pageRenderer);
         } else {
-            decodingAsyncTask = new DoubleDecodingAsyncTask(path, isAsset, password, this, pdfiumCore);
+            decodingAsyncTask = new DoubleDecodingAsyncTask(path, isAsset, password, this, pageRenderer);
         }
         decodingAsyncTask.executeOnExecutor(DOWNLOAD_THREAD_POOL_EXECUTOR);
     }
@@ -580,18 +584,19 @@ public class DoublePDFView extends RelativeLayout {
             scrollHandle.destroyLayout();
         }
 
-        if (pdfiumCore != null && pdfDocument != null) {
-            pdfiumCore.closeDocument(pdfDocument);
+        // Other views may still show the documents, the registry closes them when they are not used anymore
+        if (document != null) {
+            DocumentRegistry.getInstance().release(document);
         }
-        if (pdfiumCore != null && pdfRightDocument != null) {
-            pdfiumCore.closeDocument(pdfRightDocument);
+        if (rightDocument != null) {
+            DocumentRegistry.getInstance().release(rightDocument);
         }
 
         originalUserPages = null;
         filteredUserPages = null;
         filteredUserPageIndexes = null;
-        pdfDocument = null;
-        pdfRightDocument = null;
+        document = null;
+        rightDocument = null;
         scrollHandle = null;
         isScrollHandleInit = false;
         currentXOffset = currentYOffset = 0;
@@ -865,28 +870,54 @@ public class DoublePDFView extends RelativeLayout {
     }
 
     /**
-     * Called when the PDF is loaded
+     * Show documents opened by the caller with pdfium, the view closes them when recycled
+     *
+     * @param pdfRightDocument document of the right pages, or null for a single page mode
      */
     public void loadCompleteWithCheck(PdfDocument pdfDocument, PdfDocument pdfRightDocument, boolean allPages) {
+        loadCompleteWithCheck(registerOpened(pdfDocument), registerOpened(pdfRightDocument), allPages);
+    }
+
+    /**
+     * @see #loadCompleteWithCheck(PdfDocument, PdfDocument, boolean)
+     */
+    public void loadComplete(PdfDocument pdfDocument, PdfDocument pdfRightDocument, boolean allPages) {
+        loadComplete(registerOpened(pdfDocument), registerOpened(pdfRightDocument), allPages);
+    }
+
+    private DocumentRegistry.Entry registerOpened(PdfDocument pdfDocument) {
+        if (pdfDocument == null) {
+            return null;
+        }
+        PdfiumPageRenderer renderer = pageRenderer instanceof PdfiumPageRenderer
+                ? (PdfiumPageRenderer) pageRenderer : new PdfiumPageRenderer(getContext());
+        return DocumentRegistry.getInstance().register(renderer.wrap(pdfDocument));
+    }
+
+    /**
+     * Called when the PDF is loaded
+     */
+    void loadCompleteWithCheck(DocumentRegistry.Entry document, DocumentRegistry.Entry rightDocument, boolean allPages) {
         if (DOWNLOAD_THREAD_POOL_EXECUTOR.getQueue().size() > 0) {
             clearThreads();
-            final PdfDocument fpdfDocument = pdfDocument;
-            final PdfDocument fpdfRightDocument = pdfRightDocument;
+            final DocumentRegistry.Entry fdocument = document;
+            final DocumentRegistry.Entry frightDocument = rightDocument;
             final boolean fallPages = allPages;
             new Handler().postDelayed(new Runnable() {
                 @Override
                 public void run() {
-                    loadComplete(fpdfDocument, fpdfRightDocument, fallPages);
+                    loadComplete(fdocument, frightDocument, fallPages);
                 }
             }, 50);
         } else {
-            loadComplete(pdfDocument, pdfRightDocument, allPages);
+            loadComplete(document, rightDocument, allPages);
         }
     }
 
-    public void loadComplete(PdfDocument pdfDocument, PdfDocument pdfRightDocument, boolean allPages) {
+    void loadComplete(DocumentRegistry.Entry document, DocumentRegistry.Entry rightDocument, boolean allPages) {
         state = State.LOADED;
-        this.documentPageCount = pdfiumCore.getPageCount(pdfDocument);
+        this.document = document;
+        this.rightDocument = rightDocument;
 
         int firstPageIdx = 0;
         if (originalUserPages != null) {
@@ -894,19 +925,23 @@ public class DoublePDFView extends RelativeLayout {
         }
 
         // We assume all the pages are the same size
-        this.pdfDocument = pdfDocument;
-        this.pdfRightDocument = pdfRightDocument;
-        if (allPages)
-            pdfiumCore.openPage(pdfDocument, 0, this.documentPageCount - 1);
-        else
-            pdfiumCore.openPage(pdfDocument, firstPageIdx);
-        this.pageWidth = pdfiumCore.getPageWidth(pdfDocument, firstPageIdx);
-        this.pageHeight = pdfiumCore.getPageHeight(pdfDocument, firstPageIdx);
-
-        if (pdfRightDocument != null) {
+        synchronized (document.lock) {
+            this.documentPageCount = document.handle.getPageCount();
+            if (allPages)
+                document.openPages(0, this.documentPageCount - 1);
+            else
+                document.openPage(firstPageIdx);
+            Size size = document.handle.getPageSize(firstPageIdx);
+            this.pageWidth = size.getWidth();
+            this.pageHeight = size.getHeight();
+        }
+
+        if (rightDocument != null) {
             this.twoPageMode = true;
-            pdfiumCore.openPage(pdfRightDocument, 0, this.documentPageCount - 1);
-            this.pageRightWidth = pdfiumCore.getPageWidth(pdfRightDocument, firstPageIdx);
+            synchronized (rightDocument.lock) {
+                rightDocument.openPages(0, this.documentPageCount - 1);
+                this.pageRightWidth = rightDocument.handle.getPageSize(firstPageIdx).getWidth();
+            }
         }
 
         calculateOptimalWidthAndHeight();
@@ -916,7 +951,7 @@ public class DoublePDFView extends RelativeLayout {
         bitmapRatio = (1.0f / MathUtils.ceil(getOptimalPageHeight() / 256.0f)) / (1.0f / MathUtils.ceil(getOptimalPageWidth() / 256.0f));
 
 
-        renderingAsyncTask = new DoubleRenderingAsyncTask(this, pdfiumCore, pdfDocument, pdfRightDocument);
+        renderingAsyncTask = new DoubleRenderingAsyncTask(this, document, rightDocument);
         renderingAsyncTask.executeOnExecutor(DOWNLOAD_THREAD_POOL_EXECUTOR);
 
       /*  int w = Math.round(renderingAsyncTask.width);
@@ -1341,17 +1376,21 @@ public class DoublePDFView extends RelativeLayout {
     }
 
     public PdfDocument.Meta getDocumentMeta() {
-        if (pdfDocument == null) {
+        if (document == null) {
             return null;
         }
-        return pdfiumCore.getDocumentMeta(pdfDocument);
+        synchronized (document.lock) {
+            return document.handle.getMeta();
+        }
     }
 
     public List<PdfDocument.Bookmark> getTableOfContents() {
-        if (pdfDocument == null) {
+        if (document == null) {
             return new ArrayList<>();
         }
-        return pdfiumCore.getTableOfContents(pdfDocument);
+        synchronized (document.lock) {
+            return document.handle.getTableOfContents();
+        }
     }
 
     /**
@@ -22,20 +22,15 @@ import android.graphics.RectF;
 import android.os.AsyncTask;
 
 import com.github.paperrose.pdfviewer.model.DoublePagePart;
-import com.shockwave.pdfium.PdfDocument;
-import com.shockwave.pdfium.PdfiumCore;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 class DoubleRenderingAsyncTask extends AsyncTask<Void, DoublePagePart, Void> {
 
-    private PdfiumCore pdfiumCore;
-    private PdfDocument pdfDocument;
-    private PdfDocument pdfRightDocument = null;
+    private DocumentRegistry.Entry document;
+    private DocumentRegistry.Entry rightDocument = null;
 
     private final List<RenderingTask> renderingTasks;
     private DoublePDFView pdfView;
@@ -43,13 +38,11 @@ class DoubleRenderingAsyncTask extends AsyncTask<Void, DoublePagePart, Void> {
     private RectF renderBounds = new RectF();
     private Rect roundedRenderBounds = new Rect();
     private Matrix renderMatrix = new Matrix();
-    private final Set<Integer> openedPages = new HashSet<>();
 
-    public DoubleRenderingAsyncTask(DoublePDFView pdfView, PdfiumCore pdfiumCore, PdfDocument pdfDocument, PdfDocument pdfRightDocument) {
+    public DoubleRenderingAsyncTask(DoublePDFView pdfView, DocumentRegistry.Entry document, DocumentRegistry.Entry rightDocument) {
         this.pdfView = pdfView;
-        this.pdfiumCore = pdfiumCore;
-        this.pdfDocument = pdfDocument;
-        this.pdfRightDocument = pdfRightDocument;
+        this.document = document;
+        this.rightDocument = rightDocument;
         this.renderingTasks = Collections.synchronizedList(new ArrayList<RenderingTask>());
 
     }
@@ -120,30 +113,25 @@ class DoubleRenderingAsyncTask extends AsyncTask<Void, DoublePagePart, Void> {
     }
 
     private DoublePagePart proceed(RenderingTask renderingTask) {
-        if (!openedPages.contains(renderingTask.page)) {
-            openedPages.add(renderingTask.page);
-            pdfiumCore.openPage(pdfDocument, renderingTask.page);
-        }
+        DocumentRegistry.Entry pageDocument = renderingTask.rightPage ? rightDocument : document;
 
         int w = Math.round(renderingTask.width);
         int h = Math.round(renderingTask.height);
-        Bitmap render = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+        // For RGB_565 pdfium-android converts from a native 24 bits buffer, cheaper than an ARGB_8888 copy
+        Bitmap render = Bitmap.createBitmap(w, h, renderingTask.bestQuality ? Bitmap.Config.ARGB_8888 : Bitmap.Config.RGB_565);
         calculateBounds(w, h, renderingTask.bounds);
 
-        if (!isCancelled()) {
-            pdfiumCore.renderPageBitmap(renderingTask.rightPage ? pdfRightDocument : pdfDocument, render, renderingTask.page,
+        synchronized (pageDocument.lock) {
+            if (isCancelled() || pageDocument.isClosed()) {
+                render.recycle();
+                return null;
+            }
+            pageDocument.openPage(renderingTask.page);
+            pageDocument.handle.renderPage(render, renderingTask.page,
                     roundedRenderBounds.left, roundedRenderBounds.top,
                     roundedRenderBounds.width(), roundedRenderBounds.height(), renderingTask.annotationRendering);
-        } else {
-            render.recycle();
-            return null;
         }
 
-        if (!renderingTask.bestQuality) {
-            Bitmap cpy = render.copy(Bitmap.Config.RGB_565, false);
-            render.recycle();
-            render = cpy;
-        }
         DoublePagePart pp = new DoublePagePart(renderingTask.userPage, renderingTask.page, render, //
                 renderingTask.width, renderingTask.height, //
                 renderingTask.bounds, renderingTask.thumbnail, //
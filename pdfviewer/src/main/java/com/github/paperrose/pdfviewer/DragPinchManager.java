@@ -77,7 +77,8 @@ class DragPinchManager implements GestureDetector.OnGestureListener, GestureDete
     }
 
     private boolean isPageChange(float distance) {
-        return Math.abs(distance) > Math.abs(pdfView.toCurrentScale(swipeVertical ? pdfView.getOptimalPageHeight() : pdfView.getOptimalPageWidth()) / 2);
+        return Math.abs(distance) > Math.abs(pdfView.toCurrentScale(swipeVertical
+                ? pdfView.getOptimalPageHeight(pdfView.getCurrentPage()) : pdfView.getOptimalPageWidth(pdfView.getCurrentPage())) / 2);
     }
 
     public void setSwipeEnabled(boolean isSwipeEnabled) {
@@ -26,6 +26,9 @@ import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.Process;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.widget.RelativeLayout;
@@ -36,13 +39,16 @@ import com.github.paperrose.pdfviewer.listener.OnErrorListener;
 import com.github.paperrose.pdfviewer.listener.OnLoadCompleteListener;
 import com.github.paperrose.pdfviewer.listener.OnPageChangeListener;
 import com.github.paperrose.pdfviewer.listener.OnPageScrollListener;
+import com.github.paperrose.pdfviewer.listener.OnRenderMetricsListener;
 import com.github.paperrose.pdfviewer.model.PagePart;
+import com.github.paperrose.pdfviewer.render.PageRenderer;
+import com.github.paperrose.pdfviewer.render.PdfiumPageRenderer;
 import com.github.paperrose.pdfviewer.scroll.ScrollHandle;
 import com.github.paperrose.pdfviewer.util.ArrayUtils;
 import com.github.paperrose.pdfviewer.util.Constants;
 import com.github.paperrose.pdfviewer.util.MathUtils;
 import com.shockwave.pdfium.PdfDocument;
-import com.shockwave.pdfium.PdfiumCore;
+import com.shockwave.pdfium.util.Size;
 
 import java.io.File;
 import java.io.IOException;
@@ -84,11 +90,50 @@ public class PDFView extends RelativeLayout {
 
     private ScrollDir scrollDir = ScrollDir.NONE;
 
+    /**
+     * True while a fling runs, its landing offsets are then loaded ahead
+     */
+    private boolean flingPrefetch;
+
+    /**
+     * True while the fling is too fast for the pages it passes over to be worth loading
+     */
+    private boolean flingFast;
+
+    private float flingFinalXOffset;
+
+    private float flingFinalYOffset;
+
     /**
      * Rendered parts go to the cache manager
      */
     CacheManager cacheManager;
 
+    /**
+     * Bitmaps of evicted parts, reused by the rendering task
+     */
+    BitmapPool bitmapPool;
+
+    /**
+     * Rendered parts persisted across sessions, null if disabled
+     */
+    DiskTileCache diskTileCache;
+
+    /**
+     * Parts evicted from the cache, kept compressed
+     */
+    CompressedTileCache compressedTileCache;
+
+    /**
+     * Timings of the render pipeline, recorded while enabled or listened to
+     */
+    final RenderMetrics renderMetrics = new RenderMetrics();
+
+    /**
+     * Identifies the loaded document in the disk cache, null if unknown
+     */
+    private volatile String documentFingerprint;
+
     /**
      * Animation manager manage all offset and zoom animation
      */
@@ -142,6 +187,35 @@ public class PDFView extends RelativeLayout {
      */
     private float optimalPageWidth, optimalPageHeight;
 
+    /**
+     * Size and position of every page along the scroll axis, at zoom 1
+     */
+    private PageLayout pageLayout;
+
+    /**
+     * Reads the size of the pages not read when the document was loaded
+     */
+    private PageSizesAsyncTask pageSizesAsyncTask;
+
+    /**
+     * Document page shown by each user page, -1 if none
+     */
+    private int[] userDocumentPages;
+
+    /**
+     * Opens the pages around the current page once the UI thread is idle
+     */
+    private final MessageQueue.IdleHandler warmUpIdleHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            warmUpScheduled = false;
+            warmUpPages();
+            return false;
+        }
+    };
+
+    private boolean warmUpScheduled;
+
     /**
      * If you picture all the pages side by side in their optimal width,
      * and taking into account the zoom level, the current offset is the
@@ -161,6 +235,11 @@ public class PDFView extends RelativeLayout {
      */
     private float zoom = 1f;
 
+    /**
+     * Changes with the zoom level, parts requested for another epoch are not rendered
+     */
+    private volatile int renderEpoch = 0;
+
     /**
      * True if the PDFView has been recycled
      */
@@ -208,11 +287,30 @@ public class PDFView extends RelativeLayout {
      */
     private OnDrawListener onDrawListener;
 
+    /**
+     * Call back object to call with the render metrics
+     */
+    private OnRenderMetricsListener onRenderMetricsListener;
+
+    private boolean renderMetricsEnabled;
+
+    private long lastRenderMetricsNanos;
+
     /**
      * Paint object for drawing
      */
     private Paint paint;
 
+    /**
+     * Paint object for drawing the paper under the ALPHA_8 parts
+     */
+    private Paint paperPaint;
+
+    /**
+     * Paint object for drawing the parts of a single color
+     */
+    private Paint solidPaint;
+
     /**
      * Paint object for drawing debug stuff
      */
@@ -226,11 +324,14 @@ public class PDFView extends RelativeLayout {
     private boolean swipeVertical = true;
 
     /**
-     * Pdfium core for loading and rendering PDFs
+     * Backend loading and rendering the documents, pdfium by default
      */
-    private PdfiumCore pdfiumCore;
+    private PageRenderer pageRenderer;
 
-    private PdfDocument pdfDocument;
+    /**
+     * Registry entry of the loaded document, released on recycle
+     */
+    private DocumentRegistry.Entry document;
 
     private ScrollHandle scrollHandle;
 
@@ -252,6 +353,21 @@ public class PDFView extends RelativeLayout {
      */
     private boolean annotationRendering = false;
 
+    /**
+     * Number of threads rendering parts in parallel
+     */
+    private int renderWorkerCount = DEFAULT_RENDER_WORKERS;
+
+    /**
+     * True if parts without color are stored in ALPHA_8
+     */
+    private boolean grayscaleTiles = true;
+
+    /**
+     * Estimated native memory the opened pages of the document may use
+     */
+    private long pageHandlesMaxBytes = Constants.Cache.PAGE_HANDLES_SIZE;
+
     /**
      * Construct the initial view
      */
@@ -262,15 +378,20 @@ public class PDFView extends RelativeLayout {
             return;
         }
 
-        cacheManager = new CacheManager();
+        bitmapPool = new BitmapPool(Constants.Cache.BITMAP_POOL_SIZE);
+        compressedTileCache = new CompressedTileCache(Constants.Cache.COMPRESSED_CACHE_SIZE, renderMetrics);
+        cacheManager = new CacheManager(bitmapPool, compressedTileCache, CacheManager.defaultMaxBytes(context), renderMetrics);
         animationManager = new AnimationManager(this);
         dragPinchManager = new DragPinchManager(this, animationManager);
 
         paint = new Paint();
+        paperPaint = new Paint();
+        paperPaint.setColor(Color.WHITE);
+        solidPaint = new Paint();
         debugPaint = new Paint();
         debugPaint.setStyle(Style.STROKE);
 
-        pdfiumCore = new PdfiumCore(context);
+        pageRenderer = new PdfiumPageRenderer(context);
         setWillNotDraw(false);
     }
 
@@ -298,6 +419,41 @@ public class PDFView extends RelativeLayout {
         }
     };
 
+    private static final ThreadFactory sRenderThreadFactory = new ThreadFactory() {
+        private final AtomicInteger mCount = new AtomicInteger(1);
+
+        public Thread newThread(Runnable r) {
+            return new Thread(r, "PDFView Render #" + mCount.getAndIncrement());
+        }
+    };
+
+    /**
+     * Runs the additional rendering workers, each one for the lifetime of a rendering task
+     */
+    static final ThreadPoolExecutor RENDER_THREAD_POOL_EXECUTOR;
+
+    /**
+     * Opens pages and reads their size in the background. Kept apart from the download executor,
+     * which is shut down by {@link #clearThreads()} and whose threads the rendering tasks hold.
+     */
+    static final ThreadPoolExecutor PAGES_EXECUTOR = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "PDFView Pages");
+        }
+    });
+
+    /**
+     * Pdfium calls are serialized, more workers only overlap the work around them
+     */
+    public static final int DEFAULT_RENDER_WORKERS = Math.max(1, Math.min(CPU_COUNT / 2, 4));
 
     static {
         ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(
@@ -307,6 +463,14 @@ public class PDFView extends RelativeLayout {
 
         DOWNLOAD_THREAD_POOL_EXECUTOR = threadPoolExecutor;
 
+        ThreadPoolExecutor renderPoolExecutor = new ThreadPoolExecutor(
+                MAXIMUM_POOL_SIZE, MAXIMUM_POOL_SIZE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                sRenderPoolWorkQueue, sRenderThreadFactory);
+        renderPoolExecutor.allowCoreThreadTimeOut(true);
+
+        RENDER_THREAD_POOL_EXECUTOR = renderPoolExecutor;
+
+        PAGES_EXECUTOR.allowCoreThreadTimeOut(true);
     }
 
     private void load(byte[] fileBytes, String password, OnLoadCompleteListener onLoadCompleteListener, OnLoadCompleteListener onDrawBitmapCompleteListener, OnErrorListener onErrorListener) {
@@ -320,12 +484,13 @@ public class PDFView extends RelativeLayout {
         this.onErrorListener = onErrorListener;
 
         recycled = false;
+        renderMetrics.startLoad();
         // Start decoding document
         if (DOWNLOAD_THREAD_POOL_EXECUTOR.getQueue().size() > 0) {
             clearThreads();
             final byte[] fBytes = fileBytes;
             final String fPassword = password;
-            decodingAsyncTask = new DecodingAsyncTask(fBytes, fPassword, PDFView.this, pdfiumCore);
+            decodingAsyncTask = new DecodingAsyncTask(fBytes, fPassword, PDFView.this, pageRenderer);
             if (DOWNLOAD_THREAD_POOL_EXECUTOR.isShutdown()
                     || DOWNLOAD_THREAD_POOL_EXECUTOR.isTerminated()
                     || DOWNLOAD_THREAD_POOL_EXECUTOR.isTerminating())
@@ -337,13 +502,13 @@ public class PDFView extends RelativeLayout {
             }
         } else {
             try {
-                decodingAsyncTask = new DecodingAsyncTask(fileBytes, password, this, pdfiumCore);
+                decodingAsyncTask = new DecodingAsyncTask(fileBytes, password, this, pageRenderer);
                 decodingAsyncTask.executeOnExecutor(DOWNLOAD_THREAD_POOL_EXECUTOR);
             } catch (IllegalStateException e) {
                 clearThreads();
                 final byte[] fBytes = fileBytes;
                 final String fPassword = password;
-                decodingAsyncTask = new DecodingAsyncTask(fBytes, fPassword, PDFView.this, pdfiumCore);
+                decodingAsyncTask = new DecodingAsyncTask(fBytes, fPassword, PDFView.this, pageRenderer);
                 decodingAsyncTask.executeOnExecutor(DOWNLOAD_THREAD_POOL_EXECUTOR);
             }
         }
@@ -359,6 +524,7 @@ public class PDFView extends RelativeLayout {
         this.pageWidth = readyBitmap.getWidth();
         this.pageHeight = readyBitmap.getHeight();
         documentPageCount = 1;
+        pageLayout = new PageLayout(1, (float) pageHeight / pageWidth);
         calculateOptimalWidthAndHeight();
         moveTo(0, 0, true);
         redraw();
@@ -382,8 +548,9 @@ public class PDFView extends RelativeLayout {
         this.onErrorListener = onErrorListener;
 
         recycled = false;
+        renderMetrics.startLoad();
         // Start decoding document
-        decodingAsyncTask = new DecodingAsyncTask(path, isAsset, password, this, pdfiumCore);
+        decodingAsyncTask = new DecodingAsyncTask(path, isAsset, password, this, pageRenderer);
         decodingAsyncTask.executeOnExecutor(DOWNLOAD_THREAD_POOL_EXECUTOR);
     }
 
@@ -404,14 +571,14 @@ public class PDFView extends RelativeLayout {
      */
     public void jumpTo(int page, boolean withAnimation) {
         if (swipeVertical) {
-            float toY = -page * toCurrentScale(optimalPageHeight);
+            float toY = -toCurrentScale(getPageOffset(determineValidPageNumberFrom(page)));
             if (withAnimation) {
                 animationManager.startYAnimation(currentYOffset, toY);
             } else {
                 moveTo(currentXOffset, toY);
             }
         } else {
-            float toX = -page * toCurrentScale(optimalPageWidth);
+            float toX = -toCurrentScale(getPageOffset(determineValidPageNumberFrom(page)));
             if (withAnimation) {
                 animationManager.startXAnimation(currentXOffset, toX);
             } else {
@@ -445,6 +612,7 @@ public class PDFView extends RelativeLayout {
         }
 
         loadPages();
+        scheduleWarmUp();
 
         if (scrollHandle != null && !documentFitsView()) {
             scrollHandle.setPageNum(currentPage + 1);
@@ -464,9 +632,9 @@ public class PDFView extends RelativeLayout {
     public float getPositionOffset() {
         float offset;
         if (swipeVertical) {
-            offset = -currentYOffset / (getPageCount() * toCurrentScale(optimalPageHeight) - getHeight());
+            offset = -currentYOffset / (toCurrentScale(getDocumentLength()) - getHeight());
         } else {
-            offset = -currentXOffset / (getPageCount() * toCurrentScale(optimalPageWidth) - getWidth());
+            offset = -currentXOffset / (toCurrentScale(getDocumentLength()) - getWidth());
         }
         return MathUtils.limit(offset, 0, 1);
     }
@@ -478,9 +646,9 @@ public class PDFView extends RelativeLayout {
      */
     public void setPositionOffset(float progress, boolean moveHandle) {
         if (swipeVertical) {
-            moveTo(currentXOffset, (-getPageCount() * toCurrentScale(optimalPageHeight) + getHeight()) * progress, moveHandle);
+            moveTo(currentXOffset, (-toCurrentScale(getDocumentLength()) + getHeight()) * progress, moveHandle);
         } else {
-            moveTo((-getPageCount() * toCurrentScale(optimalPageWidth) + getWidth()) * progress, currentYOffset, moveHandle);
+            moveTo((-toCurrentScale(getDocumentLength()) + getWidth()) * progress, currentYOffset, moveHandle);
         }
         loadPageByOffset();
     }
@@ -493,6 +661,54 @@ public class PDFView extends RelativeLayout {
         animationManager.stopFling();
     }
 
+    /**
+     * Load the view a fling lands on ahead of the fling, the offsets are kept in the big strip
+     * like {@link #moveTo(float, float)} does
+     */
+    void startFlingPrefetch(float finalXOffset, float finalYOffset, float velocity) {
+        float length = toCurrentScale(getDocumentLength());
+        if (swipeVertical) {
+            float pageWidth = toCurrentScale(optimalPageWidth);
+            flingFinalXOffset = MathUtils.limit(finalXOffset, Math.min(0, getWidth() - pageWidth), 0);
+            flingFinalYOffset = MathUtils.limit(finalYOffset, Math.min(0, getHeight() - length), 0);
+        } else {
+            float pageHeight = toCurrentScale(optimalPageHeight);
+            flingFinalXOffset = MathUtils.limit(finalXOffset, Math.min(0, getWidth() - length), 0);
+            flingFinalYOffset = MathUtils.limit(finalYOffset, Math.min(0, getHeight() - pageHeight), 0);
+        }
+        flingPrefetch = true;
+        updateFlingVelocity(velocity);
+    }
+
+    /**
+     * @param velocity current speed of the fling, in pixels per second
+     */
+    void updateFlingVelocity(float velocity) {
+        float viewLength = swipeVertical ? getHeight() : getWidth();
+        flingFast = flingPrefetch && velocity > viewLength * Constants.FLING_FAST_VIEWS_PER_SECOND;
+    }
+
+    void stopFlingPrefetch() {
+        flingPrefetch = false;
+        flingFast = false;
+    }
+
+    boolean isFlingPrefetching() {
+        return flingPrefetch;
+    }
+
+    boolean isFlingFast() {
+        return flingFast;
+    }
+
+    float getFlingFinalXOffset() {
+        return flingFinalXOffset;
+    }
+
+    float getFlingFinalYOffset() {
+        return flingFinalYOffset;
+    }
+
     public int getPageCount() {
         if (originalUserPages != null) {
             return originalUserPages.length;
@@ -528,6 +744,11 @@ public class PDFView extends RelativeLayout {
         this.onDrawListener = onDrawListener;
     }
 
+    private void setOnRenderMetricsListener(OnRenderMetricsListener onRenderMetricsListener) {
+        this.onRenderMetricsListener = onRenderMetricsListener;
+        renderMetrics.setEnabled(renderMetricsEnabled || onRenderMetricsListener != null);
+    }
+
     public void recycle() {
 
         animationManager.stopAll();
@@ -539,26 +760,40 @@ public class PDFView extends RelativeLayout {
         if (decodingAsyncTask != null) {
             decodingAsyncTask.cancel(true);
         }
+        if (pageSizesAsyncTask != null) {
+            pageSizesAsyncTask.cancel(true);
+            pageSizesAsyncTask = null;
+        }
+        if (warmUpScheduled) {
+            Looper.myQueue().removeIdleHandler(warmUpIdleHandler);
+            warmUpScheduled = false;
+        }
 
         // Clear caches
         cacheManager.recycle();
+        compressedTileCache.clear();
 
         if (scrollHandle != null && isScrollHandleInit) {
             scrollHandle.destroyLayout();
         }
 
-        if (pdfiumCore != null && pdfDocument != null) {
-            pdfiumCore.closeDocument(pdfDocument);
+        // Other views may still show the document, the registry closes it when it is not used anymore
+        if (document != null) {
+            DocumentRegistry.getInstance().release(document);
         }
 
         originalUserPages = null;
         filteredUserPages = null;
         filteredUserPageIndexes = null;
-        pdfDocument = null;
+        document = null;
+        pageLayout = null;
+        userDocumentPages = null;
+        documentFingerprint = null;
         scrollHandle = null;
         isScrollHandleInit = false;
         currentXOffset = currentYOffset = 0;
         zoom = 1f;
+        renderEpoch++;
         recycled = true;
         state = State.DEFAULT;
     }
@@ -643,22 +878,53 @@ public class PDFView extends RelativeLayout {
         float currentYOffset = this.currentYOffset;
         canvas.translate(currentXOffset, currentYOffset);
         if (readyBitmap == null) {
+            // Only the pages in the view are visited
+            int firstPage = 0;
+            int lastPage = -1;
+            if (pageLayout != null && pageLayout.getPageCount() > 0 && optimalPageWidth > 0 && optimalPageHeight > 0) {
+                if (swipeVertical) {
+                    firstPage = pageLayout.getPageAt(toRealScale(-currentYOffset));
+                    lastPage = pageLayout.getPageAt(toRealScale(-currentYOffset + getHeight()));
+                } else {
+                    firstPage = pageLayout.getPageAt(toRealScale(-currentXOffset));
+                    lastPage = pageLayout.getPageAt(toRealScale(-currentXOffset + getWidth()));
+                }
+            }
+
             // Draws thumbnails
-            for (PagePart part : cacheManager.getThumbnails()) {
-                drawPart(canvas, part);
+            for (PagePart part : cacheManager.getThumbnailsDrawList()) {
+                if (part.getUserPage() >= firstPage && part.getUserPage() <= lastPage) {
+                    drawPart(canvas, part);
+                }
             }
 
-            // Draws parts
-            if (!cacheManager.getPageParts().isEmpty()) {
-                bitmapRatio = ((float) cacheManager.getPageParts().get(0).getRenderedBitmap().getHeight()) /
-                        ((float) cacheManager.getPageParts().get(0).getRenderedBitmap().getWidth());
+            // Draws parts, the coarsest first so every region shows the sharpest cached part
+            PagePart[] parts = cacheManager.getDrawList();
+            for (int i = parts.length - 1; i >= 0; i--) {
+                Bitmap sharpest = parts[i].getRenderedBitmap();
+                if (sharpest != null) {
+                    bitmapRatio = ((float) sharpest.getHeight()) / ((float) sharpest.getWidth());
+                    break;
+                }
             }
             if (onDrawBitmapCompleteListener != null) {
                 onDrawBitmapCompleteListener.loadComplete(0);
                 onDrawBitmapCompleteListener = null;
             }
-            for (PagePart part : cacheManager.getPageParts()) {
-                drawPart(canvas, part);
+            for (int page = firstPage; page <= lastPage; page++) {
+                // The visible area in page relative coordinates
+                float pageWidth = toCurrentScale(pageLayout.getPageWidth(page));
+                float pageHeight = toCurrentScale(pageLayout.getPageHeight(page));
+                float pageStart = toCurrentScale(pageLayout.getPageOffset(page));
+                float pageX = swipeVertical ? 0 : pageStart;
+                float pageY = swipeVertical ? pageStart : 0;
+                visibleBounds.set((-currentXOffset - pageX) / pageWidth, (-currentYOffset - pageY) / pageHeight,
+                        (-currentXOffset - pageX + getWidth()) / pageWidth, (-currentYOffset - pageY + getHeight()) / pageHeight);
+                for (PagePart part : cacheManager.getPageDrawList(page)) {
+                    if (RectF.intersects(part.getPageRelativeBounds(), visibleBounds)) {
+                        drawPart(canvas, part);
+                    }
+                }
             }
 
         } else {
@@ -666,14 +932,17 @@ public class PDFView extends RelativeLayout {
         }
         // Draws the user layer
         if (onDrawListener != null) {
-            canvas.translate(toCurrentScale(currentFilteredPage * optimalPageWidth), 0);
+            float pageOffset = toCurrentScale(getPageOffset(currentPage));
+            float layerX = swipeVertical ? 0 : pageOffset;
+            float layerY = swipeVertical ? pageOffset : 0;
+            canvas.translate(layerX, layerY);
 
             onDrawListener.onLayerDrawn(canvas, //
-                    toCurrentScale(optimalPageWidth), //
-                    toCurrentScale(optimalPageHeight),
+                    toCurrentScale(getOptimalPageWidth(currentPage)), //
+                    toCurrentScale(getOptimalPageHeight(currentPage)),
                     currentPage);
 
-            canvas.translate(-toCurrentScale(currentFilteredPage * optimalPageWidth), 0);
+            canvas.translate(-layerX, -layerY);
         }
 
         // Restores the canvas position
@@ -687,6 +956,17 @@ public class PDFView extends RelativeLayout {
 
     private float bitmapRatio = 0;
 
+    /**
+     * Geometry reused by every drawPart() call, onDraw() allocates nothing
+     */
+    private final Rect srcRect = new Rect();
+
+    private final RectF dstRect = new RectF();
+
+    private final RectF visibleBounds = new RectF();
+
+    private static final RectF FULL_PAGE_BOUNDS = new RectF(0f, 0f, 1f, 1f);
+
     /**
      * Draw a given PagePart on the canvas
      */
@@ -695,7 +975,7 @@ public class PDFView extends RelativeLayout {
         RectF pageRelativeBounds = part.getPageRelativeBounds();
         Bitmap renderedBitmap = part.getRenderedBitmap();
 
-        if (renderedBitmap.isRecycled()) {
+        if (renderedBitmap != null && renderedBitmap.isRecycled()) {
             return;
         }
 
@@ -703,23 +983,22 @@ public class PDFView extends RelativeLayout {
         float localTranslationX = 0;
         float localTranslationY = 0;
         if (swipeVertical)
-            localTranslationY = toCurrentScale(part.getUserPage() * optimalPageHeight);
+            localTranslationY = toCurrentScale(getPageOffset(part.getUserPage()));
         else
-            localTranslationX = toCurrentScale(part.getUserPage() * optimalPageWidth);
+            localTranslationX = toCurrentScale(getPageOffset(part.getUserPage()));
         canvas.translate(localTranslationX, localTranslationY);
 
-        Rect srcRect = new Rect(0, 0, renderedBitmap.getWidth(),
-                renderedBitmap.getHeight());
-
-        float offsetX = toCurrentScale(pageRelativeBounds.left * optimalPageWidth);
-        float offsetY = toCurrentScale(pageRelativeBounds.top * optimalPageHeight);
-        float width = toCurrentScale(pageRelativeBounds.width() * optimalPageWidth);
-        float height = toCurrentScale(pageRelativeBounds.height() * optimalPageHeight);
+        float pageWidth = getOptimalPageWidth(part.getUserPage());
+        float pageHeight = getOptimalPageHeight(part.getUserPage());
+        float offsetX = toCurrentScale(pageRelativeBounds.left * pageWidth);
+        float offsetY = toCurrentScale(pageRelativeBounds.top * pageHeight);
+        float width = toCurrentScale(pageRelativeBounds.width() * pageWidth);
+        float height = toCurrentScale(pageRelativeBounds.height() * pageHeight);
 
         // If we use float values for this rectangle, there will be
         // a possible gap between page parts, especially when
         // the zoom level is high.
-        RectF dstRect = new RectF((int) offsetX, (int) offsetY,
+        dstRect.set((int) offsetX, (int) offsetY,
                 (int) (offsetX + width),
                 (int) (offsetY + height));
 
@@ -735,7 +1014,17 @@ public class PDFView extends RelativeLayout {
             return;
         }
 
-        canvas.drawBitmap(renderedBitmap, srcRect, dstRect, paint);
+        if (part.isSolid()) {
+            solidPaint.setColor(part.getColor());
+            canvas.drawRect(dstRect, solidPaint);
+        } else {
+            if (renderedBitmap.getConfig() == Bitmap.Config.ALPHA_8) {
+                // The alpha is the ink, drawn with the color of the paint over the paper
+                canvas.drawRect(dstRect, paperPaint);
+            }
+            srcRect.set(0, 0, renderedBitmap.getWidth(), renderedBitmap.getHeight());
+            canvas.drawBitmap(renderedBitmap, srcRect, dstRect, paint);
+        }
 
         if (Constants.DEBUG_MODE) {
             debugPaint.setColor(part.getUserPage() % 2 == 0 ? Color.RED : Color.BLUE);
@@ -750,7 +1039,7 @@ public class PDFView extends RelativeLayout {
 
     private void drawBitmap(Canvas canvas, Bitmap bitmap) {
         // Can seem strange, but avoid lot of calls
-        RectF pageRelativeBounds = new RectF(0f, 0f, 1f, 1f);
+        RectF pageRelativeBounds = FULL_PAGE_BOUNDS;
         Bitmap renderedBitmap = bitmap;
 
         if (renderedBitmap.isRecycled()) {
@@ -767,8 +1056,7 @@ public class PDFView extends RelativeLayout {
             localTranslationX = toCurrentScale(0 * optimalPageWidth);
         canvas.translate(localTranslationX, localTranslationY);
 
-        Rect srcRect = new Rect(0, 0, renderedBitmap.getWidth(),
-                renderedBitmap.getHeight());
+        srcRect.set(0, 0, renderedBitmap.getWidth(), renderedBitmap.getHeight());
 
         float offsetX = toCurrentScale(pageRelativeBounds.left * optimalPageWidth);
         float offsetY = toCurrentScale(pageRelativeBounds.top * optimalPageHeight);
@@ -778,7 +1066,7 @@ public class PDFView extends RelativeLayout {
         // If we use float values for this rectangle, there will be
         // a possible gap between page parts, especially when
         // the zoom level is high.
-        RectF dstRect = new RectF((int) offsetX, (int) offsetY,
+        dstRect.set((int) offsetX, (int) offsetY,
                 (int) (offsetX + width),
                 (int) (offsetY + height));
 
@@ -812,45 +1100,96 @@ public class PDFView extends RelativeLayout {
             return;
         }
 
-        // Cancel all current tasks
-        renderingAsyncTask.removeAllTasks();
+        // Keep the tasks still wanted, drop the other ones
+        renderingAsyncTask.startPass();
         cacheManager.makeANewSet();
 
         pagesLoader.loadPages();
+        renderingAsyncTask.endPass();
         redraw();
     }
 
     /**
-     * Called when the PDF is loaded
+     * Show a document opened by the caller with pdfium, the view closes it when recycled
+     *
+     * @param allPages ignored, pages are opened off the UI thread when first needed
+     * @deprecated use {@link #loadCompleteWithCheck(PdfDocument)}
      */
+    @Deprecated
     public void loadCompleteWithCheck(PdfDocument pdfDocument, boolean allPages) {
+        loadCompleteWithCheck(pdfDocument);
+    }
+
+    /**
+     * Show a document opened by the caller with pdfium, the view closes it when recycled
+     */
+    public void loadCompleteWithCheck(PdfDocument pdfDocument) {
+        loadCompleteWithCheck(registerOpened(pdfDocument));
+    }
+
+    /**
+     * @param allPages ignored, pages are opened off the UI thread when first needed
+     * @deprecated use {@link #loadComplete(PdfDocument)}
+     */
+    @Deprecated
+    public void loadComplete(PdfDocument pdfDocument, boolean allPages) {
+        loadComplete(pdfDocument);
+    }
+
+    /**
+     * @see #loadCompleteWithCheck(PdfDocument)
+     */
+    public void loadComplete(PdfDocument pdfDocument) {
+        loadComplete(registerOpened(pdfDocument));
+    }
+
+    private DocumentRegistry.Entry registerOpened(PdfDocument pdfDocument) {
+        PdfiumPageRenderer renderer = pageRenderer instanceof PdfiumPageRenderer
+                ? (PdfiumPageRenderer) pageRenderer : new PdfiumPageRenderer(getContext());
+        return DocumentRegistry.getInstance().register(renderer.wrap(pdfDocument));
+    }
+
+    /**
+     * Called when the PDF is loaded
+     */
+    void loadCompleteWithCheck(DocumentRegistry.Entry document) {
         if (DOWNLOAD_THREAD_POOL_EXECUTOR.getQueue().size() > 0) {
             clearThreads();
-            final PdfDocument fpdfDocument = pdfDocument;
-            final boolean fallPages = allPages;
-            loadComplete(fpdfDocument, fallPages);
+            final DocumentRegistry.Entry fdocument = document;
+            loadComplete(fdocument);
         } else {
-            loadComplete(pdfDocument, allPages);
+            loadComplete(document);
         }
     }
 
-    public void loadComplete(PdfDocument pdfDocument, boolean allPages) {
+    /**
+     * Runs on the UI thread, so no page is opened here. Pages are opened by the rendering workers
+     * when first rendered, and around the current page when the UI thread is idle.
+     */
+    void loadComplete(DocumentRegistry.Entry document) {
         state = State.LOADED;
-        this.documentPageCount = pdfiumCore.getPageCount(pdfDocument);
+        this.document = document;
+        document.setMaxPagesBytes(pageHandlesMaxBytes);
 
         int firstPageIdx = 0;
         if (originalUserPages != null) {
             firstPageIdx = originalUserPages[0];
         }
 
-        // We assume all the pages are the same size
-        this.pdfDocument = pdfDocument;
-        if (allPages)
-            pdfiumCore.openPage(pdfDocument, 0, this.documentPageCount - 1);
-        else
-            pdfiumCore.openPage(pdfDocument, firstPageIdx);
-        this.pageWidth = pdfiumCore.getPageWidth(pdfDocument, firstPageIdx);
-        this.pageHeight = pdfiumCore.getPageHeight(pdfDocument, firstPageIdx);
+        synchronized (document.lock) {
+            this.documentPageCount = document.handle.getPageCount();
+            Size size = document.handle.getPageSize(firstPageIdx);
+            this.pageWidth = size.getWidth();
+            this.pageHeight = size.getHeight();
+        }
+
+        // Pages take the size of the first one until their own size is read in the background,
+        // the pages around the default page first
+        int[] documentPages = getUserDocumentPages();
+        userDocumentPages = documentPages;
+        int sizesFrom = Math.max(0, determineValidPageNumberFrom(defaultPage) - Constants.PAGE_SIZES_BATCH / 2);
+        int sizesTo = Math.min(documentPages.length, sizesFrom + Constants.PAGE_SIZES_BATCH);
+        pageLayout = new PageLayout(documentPages.length, (float) pageHeight / pageWidth);
         calculateOptimalWidthAndHeight();
 
         pagesLoader = new PagesLoader(this);
@@ -866,10 +1205,14 @@ public class PDFView extends RelativeLayout {
         final float scaledWidth = getOptimalPageWidth();
         bitmapRatio = (1.0f / MathUtils.ceil(getOptimalPageHeight() / 256.0f)) / (1.0f / MathUtils.ceil(getOptimalPageWidth() / 256.0f));
 
-        renderingAsyncTask = new RenderingAsyncTask(this, pdfiumCore, pdfDocument);
+        renderingAsyncTask = new RenderingAsyncTask(this, document,
+                renderWorkerCount, RENDER_THREAD_POOL_EXECUTOR);
 
         renderingAsyncTask.executeOnExecutor(DOWNLOAD_THREAD_POOL_EXECUTOR);
 
+        pageSizesAsyncTask = new PageSizesAsyncTask(this, document, documentPages, sizesFrom, sizesTo);
+        pageSizesAsyncTask.executeOnExecutor(PAGES_EXECUTOR);
+
       /*  int w = Math.round(renderingAsyncTask.width);
         int h = Math.round(renderingAsyncTask.height);
         Bitmap render = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
@@ -887,6 +1230,82 @@ public class PDFView extends RelativeLayout {
         }
     }
 
+    /**
+     * @return the document page shown by each user page, -1 if none
+     */
+    private int[] getUserDocumentPages() {
+        int[] documentPages = new int[getPageCount()];
+        for (int userPage = 0; userPage < documentPages.length; userPage++) {
+            int documentPage = userPage;
+            if (filteredUserPages != null) {
+                documentPage = userPage < filteredUserPages.length ? filteredUserPages[userPage] : -1;
+            }
+            documentPages[userPage] = documentPage < documentPageCount ? documentPage : -1;
+        }
+        return documentPages;
+    }
+
+    private void scheduleWarmUp() {
+        if (!warmUpScheduled && document != null) {
+            warmUpScheduled = true;
+            Looper.myQueue().addIdleHandler(warmUpIdleHandler);
+        }
+    }
+
+    /**
+     * Open the pages around the current page in the background, the closest first
+     */
+    private void warmUpPages() {
+        final DocumentRegistry.Entry document = this.document;
+        if (recycled || document == null || userDocumentPages == null) {
+            return;
+        }
+        final int[] pages = new int[Constants.WARM_UP_PAGES * 2 + 1];
+        int count = 0;
+        for (int i = 0; i < pages.length; i++) {
+            // The current page, then alternately the pages before and after it
+            int userPage = currentPage + (i % 2 == 0 ? i / 2 : -(i + 1) / 2);
+            if (userPage >= 0 && userPage < userDocumentPages.length && userDocumentPages[userPage] >= 0) {
+                pages[count++] = userDocumentPages[userPage];
+            }
+        }
+        final int pageCount = count;
+        PAGES_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < pageCount; i++) {
+                    document.openPage(pages[i]);
+                }
+            }
+        });
+    }
+
+    /**
+     * Called on the UI thread when the size of pages was read in the background.
+     * The page at the start of the view stays in place while the pages before it change size.
+     */
+    void onPageSizesRead(int fromPage, int toPage, float[] ratios) {
+        if (recycled || pageLayout == null) {
+            return;
+        }
+        float offset = toRealScale(swipeVertical ? -currentYOffset : -currentXOffset);
+        int anchorPage = pageLayout.getPageAt(offset);
+        float anchorLength = pageLayout.getPageLength(anchorPage);
+        float anchorFraction = anchorLength > 0 ? (offset - pageLayout.getPageOffset(anchorPage)) / anchorLength : 0;
+
+        if (!pageLayout.setRatios(fromPage, toPage, ratios)) {
+            return;
+        }
+        float anchorOffset = -toCurrentScale(pageLayout.getPageOffset(anchorPage)
+                + anchorFraction * pageLayout.getPageLength(anchorPage));
+        if (swipeVertical) {
+            moveTo(currentXOffset, anchorOffset, true);
+        } else {
+            moveTo(anchorOffset, currentYOffset, true);
+        }
+        loadPages();
+    }
+
     public static void clearThreads() {
         DOWNLOAD_THREAD_POOL_EXECUTOR.shutdownNow();
         ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(
@@ -923,9 +1342,27 @@ public class PDFView extends RelativeLayout {
         } else {
             cacheManager.cachePart(part);
         }
+        if (renderMetrics.isEnabled()) {
+            onRenderMetricsChanged(part);
+        }
         redraw();
     }
 
+    private void onRenderMetricsChanged(PagePart part) {
+        boolean covered = false;
+        if (!part.isThumbnail() && !renderMetrics.isViewportCovered() && pagesLoader != null
+                && pagesLoader.isViewportCovered()) {
+            renderMetrics.recordViewportCovered();
+            covered = true;
+        }
+        long now = System.nanoTime();
+        if (onRenderMetricsListener != null && (covered
+                || now - lastRenderMetricsNanos >= TimeUnit.MILLISECONDS.toNanos(Constants.RENDER_METRICS_INTERVAL))) {
+            lastRenderMetricsNanos = now;
+            onRenderMetricsListener.onRenderMetrics(renderMetrics.snapshot());
+        }
+    }
+
     /**
      * Given the UserPage number, this method restrict it
      * to be sure it's an existing page. It takes care of
@@ -959,13 +1396,14 @@ public class PDFView extends RelativeLayout {
      * @return The x/y-offset to use to have the pageNb centered.
      */
     private float calculateCenterOffsetForPage(int pageNb) {
+        pageNb = determineValidPageNumberFrom(pageNb);
         if (swipeVertical) {
-            float imageY = -(pageNb * optimalPageHeight);
-            imageY += getHeight() / 2 - optimalPageHeight / 2;
+            float imageY = -getPageOffset(pageNb);
+            imageY += getHeight() / 2 - getOptimalPageHeight(pageNb) / 2;
             return imageY;
         } else {
-            float imageX = -(pageNb * optimalPageWidth);
-            imageX += getWidth() / 2 - optimalPageWidth / 2;
+            float imageX = -getPageOffset(pageNb);
+            imageX += getWidth() / 2 - getOptimalPageWidth(pageNb) / 2;
             return imageX;
         }
     }
@@ -991,6 +1429,9 @@ public class PDFView extends RelativeLayout {
 
         optimalPageWidth = w;
         optimalPageHeight = h;
+        if (pageLayout != null) {
+            pageLayout.setAxis(swipeVertical, swipeVertical ? optimalPageWidth : optimalPageHeight);
+        }
 
     }
 
@@ -1020,13 +1461,13 @@ public class PDFView extends RelativeLayout {
             }
 
             // Check Y offset
-            if (getPageCount() * toCurrentScale(optimalPageHeight) < getHeight()) { // whole document height visible on screen
-                offsetY = (getHeight() - getPageCount() * toCurrentScale(optimalPageHeight)) / 2;
+            if (toCurrentScale(getDocumentLength()) < getHeight()) { // whole document height visible on screen
+                offsetY = (getHeight() - toCurrentScale(getDocumentLength())) / 2;
             } else {
                 if (offsetY > 0) { // top visible
                     offsetY = 0;
-                } else if (offsetY + toCurrentScale(getPageCount() * optimalPageHeight) < getHeight()) { // bottom visible
-                    offsetY = -toCurrentScale(getPageCount() * optimalPageHeight) + getHeight();
+                } else if (offsetY + toCurrentScale(getDocumentLength()) < getHeight()) { // bottom visible
+                    offsetY = -toCurrentScale(getDocumentLength()) + getHeight();
                 }
             }
 
@@ -1050,13 +1491,13 @@ public class PDFView extends RelativeLayout {
             }
 
             // Check X offset
-            if (getPageCount() * toCurrentScale(optimalPageWidth) < getWidth()) { // whole document width visible on screen
-                offsetX = (getWidth() - getPageCount() * toCurrentScale(optimalPageWidth)) / 2;
+            if (toCurrentScale(getDocumentLength()) < getWidth()) { // whole document width visible on screen
+                offsetX = (getWidth() - toCurrentScale(getDocumentLength())) / 2;
             } else {
                 if (offsetX > 0) { // left visible
                     offsetX = 0;
-                } else if (offsetX + toCurrentScale(getPageCount() * optimalPageWidth) < getWidth()) { // right visible
-                    offsetX = -toCurrentScale(getPageCount() * optimalPageWidth) + getWidth();
+                } else if (offsetX + toCurrentScale(getDocumentLength()) < getWidth()) { // right visible
+                    offsetX = -toCurrentScale(getDocumentLength()) + getWidth();
                 }
             }
 
@@ -1089,16 +1530,14 @@ public class PDFView extends RelativeLayout {
     }
 
     void loadPageByOffset() {
-        float offset, optimal;
+        float offset;
         if (readyBitmap != null) return;
         if (swipeVertical) {
             offset = currentYOffset;
-            optimal = optimalPageHeight;
         } else {
             offset = currentXOffset;
-            optimal = optimalPageWidth;
         }
-        int page = (int) Math.floor((Math.abs(offset) + getHeight() / 5) / toCurrentScale(optimal));
+        int page = getPageAtOffset(toRealScale(Math.abs(offset) + getHeight() / 5));
 
         if (page >= 0 && page <= getPageCount() - 1 && page != getCurrentPage()) {
             showPage(page);
@@ -1130,6 +1569,9 @@ public class PDFView extends RelativeLayout {
      * Change the zoom level
      */
     public void zoomTo(float zoom) {
+        if (this.zoom != zoom) {
+            renderEpoch++;
+        }
         this.zoom = zoom;
     }
 
@@ -1165,9 +1607,9 @@ public class PDFView extends RelativeLayout {
      */
     public boolean documentFitsView() {
         if (swipeVertical) {
-            return getPageCount() * optimalPageHeight < getHeight();
+            return getDocumentLength() < getHeight();
         } else {
-            return getPageCount() * optimalPageWidth < getWidth();
+            return getDocumentLength() < getWidth();
         }
     }
 
@@ -1195,6 +1637,10 @@ public class PDFView extends RelativeLayout {
         return zoom;
     }
 
+    int getRenderEpoch() {
+        return renderEpoch;
+    }
+
     public boolean isZooming() {
         return zoom != minZoom;
     }
@@ -1207,6 +1653,42 @@ public class PDFView extends RelativeLayout {
         return optimalPageHeight;
     }
 
+    /**
+     * @return width of the given page at zoom 1
+     */
+    public float getOptimalPageWidth(int userPage) {
+        return pageLayout != null ? pageLayout.getPageWidth(userPage) : optimalPageWidth;
+    }
+
+    /**
+     * @return height of the given page at zoom 1
+     */
+    public float getOptimalPageHeight(int userPage) {
+        return pageLayout != null ? pageLayout.getPageHeight(userPage) : optimalPageHeight;
+    }
+
+    /**
+     * @return start of the given page along the scroll axis, at zoom 1
+     */
+    public float getPageOffset(int userPage) {
+        return pageLayout != null ? pageLayout.getPageOffset(userPage) : 0;
+    }
+
+    /**
+     * @param offset position along the scroll axis, at zoom 1
+     * @return the page at the given position, the first or the last page if outside the document
+     */
+    public int getPageAtOffset(float offset) {
+        return pageLayout != null ? pageLayout.getPageAt(offset) : 0;
+    }
+
+    /**
+     * @return length of all the pages along the scroll axis, at zoom 1
+     */
+    public float getDocumentLength() {
+        return pageLayout != null ? pageLayout.getLength() : 0;
+    }
+
     private void setDefaultPage(int defaultPage) {
         this.defaultPage = defaultPage;
     }
@@ -1238,17 +1720,15 @@ public class PDFView extends RelativeLayout {
      * @return page number at given offset, starting from 0
      */
     public int getPageAtPositionOffset(float positionOffset) {
-        float optimalSize, viewDimension;
+        float viewDimension;
         int direction = scrollDir == ScrollDir.END ? 1 : -1;
         if (swipeVertical) {
-            optimalSize = toCurrentScale(optimalPageHeight);
             viewDimension = getHeight() * direction;
         } else {
-            optimalSize = toCurrentScale(optimalPageWidth);
             viewDimension = getWidth() * direction;
         }
 
-        return (int) Math.floor((getPageCount() * positionOffset) + (viewDimension / 5 / optimalSize));
+        return getPageAtOffset(getDocumentLength() * positionOffset + toRealScale(viewDimension / 5));
     }
 
     public float getMinZoom() {
@@ -1289,28 +1769,251 @@ public class PDFView extends RelativeLayout {
 
     public void setSwipeVertical(boolean swipeVertical) {
         this.swipeVertical = swipeVertical;
+        if (pageLayout != null) {
+            pageLayout.setAxis(swipeVertical, swipeVertical ? optimalPageWidth : optimalPageHeight);
+        }
     }
 
     public void enableAnnotationRendering(boolean annotationRendering) {
         this.annotationRendering = annotationRendering;
     }
 
+    /**
+     * Persist rendered parts in the cache directory, up to the given number of bytes shared by all
+     * the views. A document loaded again is then shown from disk. Zero disables it, applied on the next load.
+     * Documents loaded with a password, decrypted ones included, are never persisted.
+     */
+    public void setDiskCacheMaxBytes(long maxBytes) {
+        diskTileCache = maxBytes > 0 ? DiskTileCache.open(getContext(), maxBytes) : null;
+    }
+
+    public boolean isDiskCacheEnabled() {
+        return diskTileCache != null;
+    }
+
+    void setDocumentFingerprint(String documentFingerprint) {
+        this.documentFingerprint = documentFingerprint;
+    }
+
+    String getDocumentFingerprint() {
+        return documentFingerprint;
+    }
+
+    /**
+     * Set the number of threads rendering parts in parallel, applied on the next load
+     */
+    public void setRenderWorkerCount(int renderWorkerCount) {
+        this.renderWorkerCount = Math.max(1, renderWorkerCount);
+    }
+
+    public int getRenderWorkerCount() {
+        return renderWorkerCount;
+    }
+
+    /**
+     * Store the parts without color in ALPHA_8, one byte per pixel, applied on the next load.
+     * Enabled by default, disable it for documents whose pages are not rendered on white paper.
+     */
+    public void setGrayscaleTiles(boolean grayscaleTiles) {
+        this.grayscaleTiles = grayscaleTiles;
+    }
+
+    public boolean isGrayscaleTiles() {
+        return grayscaleTiles;
+    }
+
     public boolean isAnnotationRendering() {
         return annotationRendering;
     }
 
+    /**
+     * Set the maximum number of bytes used by cached parts and thumbnails
+     */
+    public void setCacheMaxBytes(long maxBytes) {
+        cacheManager.setMaxBytes(maxBytes);
+    }
+
+    public long getCacheMaxBytes() {
+        return cacheManager.getMaxBytes();
+    }
+
+    /**
+     * @return number of bytes currently held by cached parts and thumbnails
+     */
+    public long getCacheSizeBytes() {
+        return cacheManager.getCurrentBytes();
+    }
+
+    /**
+     * @return highest number of bytes held by cached parts and thumbnails
+     */
+    public long getCachePeakBytes() {
+        return cacheManager.getPeakBytes();
+    }
+
+    /**
+     * @return number of parts and thumbnails evicted from the cache
+     */
+    public long getCacheEvictionCount() {
+        return cacheManager.getEvictionCount();
+    }
+
+    /**
+     * Set the maximum number of bytes of the parts evicted from the cache and kept compressed,
+     * so scrolling back to them doesn't render them again. Zero disables it.
+     */
+    public void setCompressedCacheMaxBytes(long maxBytes) {
+        compressedTileCache.setMaxBytes(maxBytes);
+    }
+
+    public long getCompressedCacheMaxBytes() {
+        return compressedTileCache.getMaxBytes();
+    }
+
+    /**
+     * @return number of bytes of the compressed parts
+     */
+    public long getCompressedCacheSizeBytes() {
+        return compressedTileCache.getSizeBytes();
+    }
+
+    /**
+     * @return number of parts inflated from the compressed cache instead of being rendered
+     */
+    public long getCompressedCacheHitCount() {
+        return compressedTileCache.getHitCount();
+    }
+
+    /**
+     * @return number of parts dropped before being rendered, because they left the view or the zoom changed
+     */
+    public long getCancelledRenderCount() {
+        return renderingAsyncTask != null ? renderingAsyncTask.getCancelledCount() : 0;
+    }
+
+    /**
+     * @return number of parts rendered but dropped before being displayed
+     */
+    public long getWastedRenderCount() {
+        return renderingAsyncTask != null ? renderingAsyncTask.getWastedCount() : 0;
+    }
+
+    /**
+     * @return number of parts rendered without color and stored in ALPHA_8
+     */
+    public long getGrayscaleRenderCount() {
+        return renderingAsyncTask != null ? renderingAsyncTask.getGrayscaleCount() : 0;
+    }
+
+    /**
+     * @return number of parts rendered as a single color, blank margins mostly, and kept without a bitmap
+     */
+    public long getSolidRenderCount() {
+        return renderingAsyncTask != null ? renderingAsyncTask.getSolidCount() : 0;
+    }
+
+    /**
+     * Set the estimated native memory the opened pages may use, each page counting for
+     * {@link Constants.Cache#PAGE_HANDLE_SIZE}. Beyond it the document handle is recycled,
+     * keeping the most recently rendered pages opened. Shared by the views showing the same document.
+     * Documents loaded from bytes without password are not recycled, their pages stay opened.
+     */
+    public void setPageHandlesMaxBytes(long maxBytes) {
+        this.pageHandlesMaxBytes = maxBytes;
+        if (document != null) {
+            document.setMaxPagesBytes(maxBytes);
+        }
+    }
+
+    public long getPageHandlesMaxBytes() {
+        return pageHandlesMaxBytes;
+    }
+
+    /**
+     * Record the render metrics even without listener, to read them with {@link #getRenderMetrics()}
+     */
+    public void setRenderMetricsEnabled(boolean enabled) {
+        this.renderMetricsEnabled = enabled;
+        renderMetrics.setEnabled(enabled || onRenderMetricsListener != null);
+    }
+
+    /**
+     * @return the render metrics of the loaded document, only decode time is recorded while disabled
+     */
+    public RenderMetrics.Snapshot getRenderMetrics() {
+        return renderMetrics.snapshot();
+    }
+
+    /**
+     * Set the backend loading and rendering the next documents, pdfium by default.
+     * The views showing the same document share it, so they should use the same renderer.
+     */
+    public void setPageRenderer(PageRenderer pageRenderer) {
+        this.pageRenderer = pageRenderer;
+    }
+
+    public PageRenderer getPageRenderer() {
+        return pageRenderer;
+    }
+
+    /**
+     * @return number of pages of the document opened in the renderer
+     */
+    public int getOpenPageCount() {
+        return document != null ? document.getOpenPageCount() : 0;
+    }
+
+    /**
+     * @return number of times the document handle was recycled to release opened pages
+     */
+    public long getDocumentRecycleCount() {
+        return document != null ? document.getRecycleCount() : 0;
+    }
+
+    /**
+     * @return number of rendered parts drawn into a reused bitmap
+     */
+    public long getBitmapPoolHitCount() {
+        return bitmapPool.getHitCount();
+    }
+
+    /**
+     * @return number of rendered parts that needed a new bitmap allocation
+     */
+    public long getBitmapPoolMissCount() {
+        return bitmapPool.getMissCount();
+    }
+
+    /**
+     * @return number of parts read from the disk cache instead of being rendered
+     */
+    public long getDiskCacheHitCount() {
+        return diskTileCache != null ? diskTileCache.getHitCount() : 0;
+    }
+
+    /**
+     * @return number of bytes of parts stored in the disk cache
+     */
+    public long getDiskCacheSizeBytes() {
+        return diskTileCache != null ? diskTileCache.getSizeBytes() : 0;
+    }
+
     public PdfDocument.Meta getDocumentMeta() {
-        if (pdfDocument == null) {
+        if (document == null) {
             return null;
         }
-        return pdfiumCore.getDocumentMeta(pdfDocument);
+        synchronized (document.lock) {
+            return document.handle.getMeta();
+        }
     }
 
     public List<PdfDocument.Bookmark> getTableOfContents() {
-        if (pdfDocument == null) {
+        if (document == null) {
             return new ArrayList<>();
         }
-        return pdfiumCore.getTableOfContents(pdfDocument);
+        synchronized (document.lock) {
+            return document.handle.getTableOfContents();
+        }
     }
 
     /**
@@ -1405,6 +2108,22 @@ public class PDFView extends RelativeLayout {
 
         private ScrollHandle scrollHandle = null;
 
+        private long cacheMaxBytes = 0;
+
+        private long compressedCacheMaxBytes = Constants.Cache.COMPRESSED_CACHE_SIZE;
+
+        private int renderWorkers = DEFAULT_RENDER_WORKERS;
+
+        private long diskCacheMaxBytes = 0;
+
+        private boolean grayscaleTiles = true;
+
+        private long pageHandlesMaxBytes = 0;
+
+        private PageRenderer pageRenderer = null;
+
+        private OnRenderMetricsListener onRenderMetricsListener;
+
         private Configurator(String path, boolean isAsset) {
             this.path = path;
             this.isAsset = isAsset;
@@ -1463,6 +2182,11 @@ public class PDFView extends RelativeLayout {
             return this;
         }
 
+        public Configurator onRenderMetrics(OnRenderMetricsListener onRenderMetricsListener) {
+            this.onRenderMetricsListener = onRenderMetricsListener;
+            return this;
+        }
+
         public Configurator onError(OnErrorListener onErrorListener) {
             this.onErrorListener = onErrorListener;
             return this;
@@ -1493,18 +2217,89 @@ public class PDFView extends RelativeLayout {
             return this;
         }
 
+        /**
+         * Byte budget of the rendered parts cache, by default a fraction of the device memory class
+         */
+        public Configurator cacheMaxBytes(long cacheMaxBytes) {
+            this.cacheMaxBytes = cacheMaxBytes;
+            return this;
+        }
+
+        /**
+         * Byte budget of the evicted parts kept compressed, zero disables it
+         */
+        public Configurator compressedCacheMaxBytes(long compressedCacheMaxBytes) {
+            this.compressedCacheMaxBytes = compressedCacheMaxBytes;
+            return this;
+        }
+
+        /**
+         * Number of threads rendering parts in parallel
+         */
+        public Configurator renderWorkers(int renderWorkers) {
+            this.renderWorkers = renderWorkers;
+            return this;
+        }
+
+        /**
+         * Byte limit of the rendered parts persisted across sessions, disabled by default.
+         * Documents loaded with a password are never persisted.
+         */
+        public Configurator diskCacheMaxBytes(long diskCacheMaxBytes) {
+            this.diskCacheMaxBytes = diskCacheMaxBytes;
+            return this;
+        }
+
+        /**
+         * Store the parts without color in ALPHA_8, enabled by default
+         */
+        public Configurator grayscaleTiles(boolean grayscaleTiles) {
+            this.grayscaleTiles = grayscaleTiles;
+            return this;
+        }
+
+        /**
+         * Estimated native memory of the pages kept opened in pdfium
+         */
+        public Configurator pageHandlesMaxBytes(long pageHandlesMaxBytes) {
+            this.pageHandlesMaxBytes = pageHandlesMaxBytes;
+            return this;
+        }
+
+        /**
+         * Backend loading and rendering the document, pdfium by default
+         */
+        public Configurator pageRenderer(PageRenderer pageRenderer) {
+            this.pageRenderer = pageRenderer;
+            return this;
+        }
+
         public void load() {
             PDFView.this.recycle();
             PDFView.this.setOnDrawListener(onDrawListener);
             PDFView.this.setOnPageChangeListener(onPageChangeListener);
             PDFView.this.setOnPageScrollListener(onPageScrollListener);
+            PDFView.this.setOnRenderMetricsListener(onRenderMetricsListener);
             PDFView.this.enableSwipe(enableSwipe);
             PDFView.this.enableDoubletap(enableDoubletap);
             PDFView.this.setDefaultPage(defaultPage);
             PDFView.this.setSwipeVertical(!swipeHorizontal);
             PDFView.this.enableAnnotationRendering(annotationRendering);
             PDFView.this.setScrollHandle(scrollHandle);
+            PDFView.this.setRenderWorkerCount(renderWorkers);
+            PDFView.this.setDiskCacheMaxBytes(diskCacheMaxBytes);
+            PDFView.this.setGrayscaleTiles(grayscaleTiles);
             PDFView.this.dragPinchManager.setSwipeVertical(swipeVertical);
+            if (cacheMaxBytes > 0) {
+                PDFView.this.setCacheMaxBytes(cacheMaxBytes);
+            }
+            PDFView.this.setCompressedCacheMaxBytes(compressedCacheMaxBytes);
+            if (pageHandlesMaxBytes > 0) {
+                PDFView.this.setPageHandlesMaxBytes(pageHandlesMaxBytes);
+            }
+            if (pageRenderer != null) {
+                PDFView.this.setPageRenderer(pageRenderer);
+            }
             if (fileBytes != null) {
                 PDFView.this.load(fileBytes, password, onLoadCompleteListener, onDrawBitmapCompleteListener, onErrorListener);
             } else if (readyBitmap != null) {
@@ -0,0 +1,88 @@
+package com.github.paperrose.pdfviewer;
+
+import com.github.paperrose.pdfviewer.util.Constants;
+import com.github.paperrose.pdfviewer.util.MathUtils;
+
+/**
+ * Grid of parts a page is cut into at a given zoom, each part rendering
+ * about {@link Constants#PART_SIZE} pixels on each side.
+ * Reused for every page instead of allocating, not thread safe.
+ */
+class PageGrid {
+
+    private int cols;
+    private int rows;
+    private float colWidth;
+    private float rowHeight;
+    private float relativePartWidth;
+    private float relativePartHeight;
+    private float partRenderWidth;
+    private float partRenderHeight;
+
+    /**
+     * @param pageWidth  width of the page at zoom 1
+     * @param pageHeight height of the page at zoom 1
+     */
+    public void set(float pageWidth, float pageHeight, float zoom) {
+        float partWidth = (Constants.PART_SIZE * (1f / pageWidth)) / zoom;
+        float partHeight = (Constants.PART_SIZE * (1f / pageHeight)) / zoom;
+        cols = MathUtils.ceil(1f / partWidth);
+        rows = MathUtils.ceil(1f / partHeight);
+        colWidth = pageWidth * zoom / cols;
+        rowHeight = pageHeight * zoom / rows;
+        relativePartWidth = 1f / (float) cols;
+        relativePartHeight = 1f / (float) rows;
+        partRenderWidth = Constants.PART_SIZE / relativePartWidth;
+        partRenderHeight = Constants.PART_SIZE / relativePartHeight;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return width of a column at the current zoom
+     */
+    public float getColWidth() {
+        return colWidth;
+    }
+
+    /**
+     * @return height of a row at the current zoom
+     */
+    public float getRowHeight() {
+        return rowHeight;
+    }
+
+    /**
+     * @return width of a part relative to the page width
+     */
+    public float getRelativePartWidth() {
+        return relativePartWidth;
+    }
+
+    /**
+     * @return height of a part relative to the page height
+     */
+    public float getRelativePartHeight() {
+        return relativePartHeight;
+    }
+
+    /**
+     * @return width of the whole page when rendering one of its parts
+     */
+    public float getPartRenderWidth() {
+        return partRenderWidth;
+    }
+
+    /**
+     * @return height of the whole page when rendering one of its parts
+     */
+    public float getPartRenderHeight() {
+        return partRenderHeight;
+    }
+}
@@ -0,0 +1,142 @@
+package com.github.paperrose.pdfviewer;
+
+import java.util.Arrays;
+
+/**
+ * Sizes and positions of the pages laid out one after another along the scroll axis, at zoom 1.
+ * <p>
+ * Pages share their size across the axis and follow their own aspect ratio along it.
+ * Sizes and cumulative offsets are kept in primitive arrays, so the page at a given offset
+ * is found by binary search. Offsets are summed again lazily, from the first page whose size changed.
+ * Pages whose size is not known yet take the ratio given to the constructor.
+ * Not thread safe, used from the UI thread.
+ */
+class PageLayout {
+
+    private final int pageCount;
+
+    /**
+     * Height divided by width, by user page
+     */
+    private final float[] ratios;
+
+    private final float[] lengths;
+
+    /**
+     * Start of each page along the axis, the last entry being the length of the document
+     */
+    private final double[] offsets;
+
+    /**
+     * Number of leading entries of {@link #offsets} that are up to date
+     */
+    private int validOffsets = 1;
+
+    private boolean vertical = true;
+
+    private float crossSize;
+
+    public PageLayout(int pageCount, float defaultRatio) {
+        this.pageCount = pageCount;
+        this.ratios = new float[pageCount];
+        this.lengths = new float[pageCount];
+        this.offsets = new double[pageCount + 1];
+        Arrays.fill(ratios, defaultRatio);
+    }
+
+    /**
+     * @param vertical  true if pages are laid out from top to bottom
+     * @param crossSize size shared by all the pages across the axis
+     */
+    public void setAxis(boolean vertical, float crossSize) {
+        this.vertical = vertical;
+        this.crossSize = crossSize;
+        for (int page = 0; page < pageCount; page++) {
+            lengths[page] = lengthOf(ratios[page]);
+        }
+        validOffsets = 1;
+    }
+
+    /**
+     * Update the ratios of pages from fromPage, inclusive, to toPage, exclusive
+     *
+     * @param ratios height divided by width, indexed by user page
+     * @return true if the size of any page changed
+     */
+    public boolean setRatios(int fromPage, int toPage, float[] ratios) {
+        int firstChanged = -1;
+        for (int page = fromPage; page < toPage; page++) {
+            if (ratios[page] > 0 && ratios[page] != this.ratios[page]) {
+                this.ratios[page] = ratios[page];
+                lengths[page] = lengthOf(ratios[page]);
+                if (firstChanged < 0) {
+                    firstChanged = page;
+                }
+            }
+        }
+        if (firstChanged < 0) {
+            return false;
+        }
+        validOffsets = Math.min(validOffsets, firstChanged + 1);
+        return true;
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    public float getPageWidth(int page) {
+        return vertical ? crossSize : lengths[page];
+    }
+
+    public float getPageHeight(int page) {
+        return vertical ? lengths[page] : crossSize;
+    }
+
+    public float getPageLength(int page) {
+        return lengths[page];
+    }
+
+    /**
+     * @param page between 0 and the page count, inclusive
+     * @return start of the page along the axis
+     */
+    public float getPageOffset(int page) {
+        updateOffsets(page + 1);
+        return (float) offsets[page];
+    }
+
+    public float getLength() {
+        return getPageOffset(pageCount);
+    }
+
+    /**
+     * @return the page containing the given offset along the axis, the first or the last page if outside
+     */
+    public int getPageAt(float offset) {
+        updateOffsets(pageCount + 1);
+        // Last page starting at or before the offset, compared as returned by getPageOffset()
+        int low = 0;
+        int high = pageCount - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if ((float) offsets[middle] <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private void updateOffsets(int count) {
+        for (int i = validOffsets; i < count; i++) {
+            offsets[i] = offsets[i - 1] + lengths[i - 1];
+        }
+        validOffsets = Math.max(validOffsets, count);
+    }
+
+    private float lengthOf(float ratio) {
+        return vertical ? crossSize * ratio : crossSize / ratio;
+    }
+}
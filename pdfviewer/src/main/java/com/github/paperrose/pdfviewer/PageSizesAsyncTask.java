@@ -0,0 +1,102 @@
+package com.github.paperrose.pdfviewer;
+
+import android.os.AsyncTask;
+
+import com.github.paperrose.pdfviewer.util.Constants;
+import com.shockwave.pdfium.util.Size;
+
+/**
+ * Reads the size of every page in the background, the pages around the first shown first, then the
+ * other ones in batches of {@link Constants#PAGE_SIZES_BATCH} pages, holding the document lock for
+ * one batch at a time. Each batch is handed to the view as soon as it is read.
+ */
+class PageSizesAsyncTask extends AsyncTask<Void, Integer, Void> {
+
+    private final PDFView pdfView;
+
+    private final DocumentRegistry.Entry document;
+
+    /**
+     * Document page of each user page, -1 if the user page shows no page
+     */
+    private final int[] documentPages;
+
+    /**
+     * User pages read first, from firstFrom inclusive to firstTo exclusive
+     */
+    private final int firstFrom, firstTo;
+
+    /**
+     * Height divided by width by user page, filled in the background and read on the UI thread
+     * once the batch is published
+     */
+    private final float[] ratios;
+
+    public PageSizesAsyncTask(PDFView pdfView, DocumentRegistry.Entry document, int[] documentPages,
+                              int firstFrom, int firstTo) {
+        this.pdfView = pdfView;
+        this.document = document;
+        this.documentPages = documentPages;
+        this.firstFrom = firstFrom;
+        this.firstTo = firstTo;
+        this.ratios = new float[documentPages.length];
+    }
+
+    /**
+     * Read the ratios of the given user pages, holding the document lock
+     *
+     * @return false if the document was closed
+     */
+    private static boolean readRatios(DocumentRegistry.Entry document, int[] documentPages,
+                              int fromPage, int toPage, float[] ratios) {
+        synchronized (document.lock) {
+            if (document.isClosed()) {
+                return false;
+            }
+            for (int page = fromPage; page < toPage; page++) {
+                if (documentPages[page] < 0) {
+                    continue;
+                }
+                Size size = document.handle.getPageSize(documentPages[page]);
+                if (size.getWidth() > 0 && size.getHeight() > 0) {
+                    ratios[page] = (float) size.getHeight() / size.getWidth();
+                }
+            }
+            return true;
+        }
+    }
+
+    @Override
+    protected Void doInBackground(Void... params) {
+        if (firstFrom < firstTo) {
+            if (!readRatios(document, documentPages, firstFrom, firstTo, ratios)) {
+                return null;
+            }
+            publishProgress(firstFrom, firstTo);
+        }
+        int page = 0;
+        while (page < documentPages.length && !isCancelled()) {
+            if (page >= firstFrom && page < firstTo) {
+                page = firstTo;
+                continue;
+            }
+            int end = Math.min(page + Constants.PAGE_SIZES_BATCH, documentPages.length);
+            if (page < firstFrom) {
+                end = Math.min(end, firstFrom);
+            }
+            if (!readRatios(document, documentPages, page, end, ratios)) {
+                return null;
+            }
+            publishProgress(page, end);
+            page = end;
+        }
+        return null;
+    }
+
+    @Override
+    protected void onProgressUpdate(Integer... range) {
+        if (!isCancelled()) {
+            pdfView.onPageSizesRead(range[0], range[1], ratios);
+        }
+    }
+}
@@ -2,7 +2,6 @@ package com.github.paperrose.pdfviewer;
 
 
 import android.graphics.RectF;
-import android.util.Pair;
 
 import com.github.paperrose.pdfviewer.util.Constants;
 import com.github.paperrose.pdfviewer.util.MathUtils;
@@ -16,20 +15,17 @@ class PagesLoader {
 
     // variables set on every call to loadPages()
     private int cacheOrder;
-    private float scaledHeight;
-    private float scaledWidth;
-    private Pair<Integer, Integer> colsRows;
     private float xOffset;
     private float yOffset;
-    private float rowHeight;
-    private float colWidth;
-    private float pageRelativePartWidth;
-    private float pageRelativePartHeight;
-    private float partRenderWidth;
-    private float partRenderHeight;
-    private int thumbnailWidth;
-    private int thumbnailHeight;
-    private final RectF thumbnailRect = new RectF(0, 0, 1, 1);
+    private int previewWidth;
+    private int previewHeight;
+    private final RectF pageRect = new RectF(0, 0, 1, 1);
+    private final RectF visibleArea = new RectF();
+
+    // geometry of the page given to usePage(), pages may differ in size
+    private int geometryPage;
+    private float pageStart;
+    private final PageGrid grid = new PageGrid();
 
     private class Holder {
         int page;
@@ -41,16 +37,6 @@ class PagesLoader {
         this.pdfView = pdfView;
     }
 
-    private Pair<Integer, Integer> getPageColsRows() {
-        float ratioX = 1f / pdfView.getOptimalPageWidth();
-        float ratioY = 1f / pdfView.getOptimalPageHeight();
-        final float partHeight = (Constants.PART_SIZE * ratioY) / pdfView.getZoom();
-        final float partWidth = (Constants.PART_SIZE * ratioX) / pdfView.getZoom();
-        final int nbRows = MathUtils.ceil(1f / partHeight);
-        final int nbCols = MathUtils.ceil(1f / partWidth);
-        return new Pair<>(nbCols, nbRows);
-    }
-
     private int documentPage(int userPage) {
         int documentPage = userPage;
         if (pdfView.getFilteredUserPages() != null) {
@@ -68,60 +54,226 @@ class PagesLoader {
         return documentPage;
     }
 
+    /**
+     * Set the geometry fields to the given page
+     */
+    private void usePage(int userPage) {
+        if (userPage == geometryPage) {
+            return;
+        }
+        geometryPage = userPage;
+        float pageWidth = pdfView.getOptimalPageWidth(userPage);
+        float pageHeight = pdfView.getOptimalPageHeight(userPage);
+        pageStart = pdfView.toCurrentScale(pdfView.getPageOffset(userPage));
+        grid.set(pageWidth, pageHeight, pdfView.getZoom());
+    }
+
     private Holder getPageAndCoordsByOffset(float offset) {
         Holder holder = new Holder();
         float fixOffset = -MathUtils.max(offset, 0);
 
+        holder.page = pdfView.getPageAtOffset(pdfView.toRealScale(fixOffset));
+        usePage(holder.page);
         if (pdfView.isSwipeVertical()) {
-            holder.page = MathUtils.floor(fixOffset / scaledHeight);
-            holder.row = MathUtils.floor(Math.abs(fixOffset - scaledHeight * holder.page) / rowHeight);
-            holder.col = MathUtils.floor(xOffset / colWidth);
+            holder.row = MathUtils.limit(MathUtils.floor((fixOffset - pageStart) / grid.getRowHeight()), 0, grid.getRows() - 1);
+            holder.col = MathUtils.floor(xOffset / grid.getColWidth());
         } else {
-            holder.page = MathUtils.floor(fixOffset / scaledWidth);
-            holder.col = MathUtils.floor(Math.abs(fixOffset - scaledWidth * holder.page) / colWidth);
-            holder.row = MathUtils.floor(yOffset / rowHeight);
+            holder.col = MathUtils.limit(MathUtils.floor((fixOffset - pageStart) / grid.getColWidth()), 0, grid.getCols() - 1);
+            holder.row = MathUtils.floor(yOffset / grid.getRowHeight());
         }
         return holder;
     }
 
+    /**
+     * Move to the next row, or column when swiping horizontally
+     *
+     * @return false if there is none
+     */
+    private boolean next(Holder holder) {
+        usePage(holder.page);
+        if (pdfView.isSwipeVertical() ? ++holder.row < grid.getRows() : ++holder.col < grid.getCols()) {
+            return true;
+        }
+        if (holder.page + 1 >= pdfView.getPageCount()) {
+            return false;
+        }
+        holder.page++;
+        if (pdfView.isSwipeVertical()) {
+            holder.row = 0;
+        } else {
+            holder.col = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Move to the previous row, or column when swiping horizontally
+     *
+     * @return false if there is none
+     */
+    private boolean previous(Holder holder) {
+        if (pdfView.isSwipeVertical() ? --holder.row >= 0 : --holder.col >= 0) {
+            return true;
+        }
+        if (holder.page <= 0) {
+            return false;
+        }
+        holder.page--;
+        usePage(holder.page);
+        if (pdfView.isSwipeVertical()) {
+            holder.row = grid.getRows() - 1;
+        } else {
+            holder.col = grid.getCols() - 1;
+        }
+        return true;
+    }
+
     private void loadThumbnail(int userPage, int documentPage) {
+        int thumbnailWidth = (int) (pdfView.getOptimalPageWidth(userPage) * Constants.THUMBNAIL_RATIO);
+        int thumbnailHeight = (int) (pdfView.getOptimalPageHeight(userPage) * Constants.THUMBNAIL_RATIO);
         if (!pdfView.cacheManager.containsThumbnail(userPage, documentPage,
-                thumbnailWidth, thumbnailHeight, thumbnailRect)) {
+                thumbnailWidth, thumbnailHeight, pageRect)) {
             pdfView.renderingAsyncTask.addRenderingTask(userPage, documentPage,
-                    thumbnailWidth, thumbnailHeight, thumbnailRect,
-                    true, 0, pdfView.isBestQuality(), pdfView.isAnnotationRendering());
+                    thumbnailWidth, thumbnailHeight, pageRect,
+                    true, 0, pdfView.isBestQuality(), pdfView.isAnnotationRendering(), pagePriority(userPage));
         }
     }
 
     /**
-     * @param number if < 0 then row (column) is above view, else row (column) is visible or below view
-     * @return
+     * Load the whole page preview, rendered before the parts so a zoomed or flung page is never blank
      */
-    private int loadRelative(int number, int nbOfPartsLoadable, boolean outsideView) {
-        int loaded = 0;
-        float newOffset;
+    private void loadPreview(int userPage, int documentPage) {
+        computePreviewSize(userPage);
+        if (previewWidth <= 0 || previewHeight <= 0) {
+            return;
+        }
+        if (!pdfView.cacheManager.upPartIfContained(userPage, documentPage,
+                previewWidth, previewHeight, pageRect, cacheOrder)
+                && !isVisibleAreaCovered(userPage, previewWidth)) {
+            // Negative so previews are rendered before any part, the closest page first
+            float priority = -1f / (1f + pagePriority(userPage));
+            pdfView.renderingAsyncTask.addRenderingTask(userPage, documentPage,
+                    previewWidth, previewHeight, pageRect, false, cacheOrder,
+                    pdfView.isBestQuality(), pdfView.isAnnotationRendering(), priority);
+        }
+        cacheOrder++;
+    }
+
+    /**
+     * @return true if the cached parts of the page already show its visible area at the given resolution
+     */
+    private boolean isVisibleAreaCovered(int userPage, float resolution) {
+        float pageWidth = pdfView.toCurrentScale(pdfView.getOptimalPageWidth(userPage));
+        float pageHeight = pdfView.toCurrentScale(pdfView.getOptimalPageHeight(userPage));
+        float start = pdfView.toCurrentScale(pdfView.getPageOffset(userPage));
+        if (pdfView.isSwipeVertical()) {
+            visibleArea.set(xOffset / pageWidth, (yOffset - start) / pageHeight,
+                    (xOffset + pdfView.getWidth()) / pageWidth, (yOffset + pdfView.getHeight() - start) / pageHeight);
+        } else {
+            visibleArea.set((xOffset - start) / pageWidth, yOffset / pageHeight,
+                    (xOffset + pdfView.getWidth() - start) / pageWidth, (yOffset + pdfView.getHeight()) / pageHeight);
+        }
+        if (!visibleArea.intersect(pageRect)) {
+            return false;
+        }
+        return pdfView.cacheManager.isCovered(userPage, visibleArea, resolution);
+    }
+
+    /**
+     * @return true if the cached parts show the whole view at the current zoom
+     */
+    public boolean isViewportCovered() {
+        xOffset = -MathUtils.max(pdfView.getCurrentXOffset(), 0);
+        yOffset = -MathUtils.max(pdfView.getCurrentYOffset(), 0);
+        float start = pdfView.isSwipeVertical() ? yOffset : xOffset;
+        float length = pdfView.isSwipeVertical() ? pdfView.getHeight() : pdfView.getWidth();
+        int firstPage = pdfView.getPageAtOffset(pdfView.toRealScale(start));
+        int lastPage = pdfView.getPageAtOffset(pdfView.toRealScale(start + length - 1));
+        for (int userPage = firstPage; userPage <= lastPage; userPage++) {
+            if (documentPage(userPage) < 0) {
+                continue;
+            }
+            // Parts are rendered at least at the page width, minus float rounding
+            float resolution = pdfView.toCurrentScale(pdfView.getOptimalPageWidth(userPage)) * 0.99f;
+            if (!isVisibleAreaCovered(userPage, resolution)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private float pagePriority(int userPage) {
+        float start = pdfView.toCurrentScale(pdfView.getPageOffset(userPage));
         if (pdfView.isSwipeVertical()) {
-            float rowsHeight = rowHeight * number + 1;
-            newOffset = pdfView.getCurrentYOffset() - (outsideView ? pdfView.getHeight() : 0) - rowsHeight;
+            float pageHeight = pdfView.toCurrentScale(pdfView.getOptimalPageHeight(userPage));
+            return priority(xOffset + pdfView.getWidth() / 2f, start + pageHeight / 2f);
         } else {
-            float colsWidth = colWidth * number;
-            newOffset = pdfView.getCurrentXOffset() - (outsideView ? pdfView.getWidth() : 0) - colsWidth;
+            float pageWidth = pdfView.toCurrentScale(pdfView.getOptimalPageWidth(userPage));
+            return priority(start + pageWidth / 2f, yOffset + pdfView.getHeight() / 2f);
+        }
+    }
+
+    /**
+     * Choose the finest preview level fitting in {@link Constants#PREVIEW_MAX_PIXELS}.
+     * Levels are relative to the zoom rounded down to a power of two, so small zoom changes keep the cached previews.
+     */
+    private void computePreviewSize(int userPage) {
+        float zoomBucket = (float) Math.pow(2, Math.floor(Math.log(pdfView.getZoom()) / Math.log(2)));
+        float width = pdfView.getOptimalPageWidth(userPage) * zoomBucket;
+        float height = pdfView.getOptimalPageHeight(userPage) * zoomBucket;
+        for (int level = 1; level <= Constants.PREVIEW_LEVELS; level++) {
+            width /= 2;
+            height /= 2;
+            if (width * height <= Constants.PREVIEW_MAX_PIXELS) {
+                break;
+            }
+        }
+        if (width * height > Constants.PREVIEW_MAX_PIXELS) {
+            float ratio = (float) Math.sqrt(Constants.PREVIEW_MAX_PIXELS / (width * height));
+            width *= ratio;
+            height *= ratio;
+        }
+        previewWidth = Math.round(width);
+        previewHeight = Math.round(height);
+    }
+
+    /**
+     * Distance between the given point of the big strip and the center of the view,
+     * shortened ahead of the scroll direction and lengthened behind it
+     */
+    private float priority(float x, float y) {
+        float dx = x - (xOffset + pdfView.getWidth() / 2f);
+        float dy = y - (yOffset + pdfView.getHeight() / 2f);
+        float along = pdfView.isSwipeVertical() ? dy : dx;
+        float across = pdfView.isSwipeVertical() ? dx : dy;
+        PDFView.ScrollDir scrollDir = pdfView.getScrollDir();
+        if (scrollDir == PDFView.ScrollDir.END) {
+            along *= along > 0 ? Constants.AHEAD_PRIORITY_WEIGHT : Constants.BEHIND_PRIORITY_WEIGHT;
+        } else if (scrollDir == PDFView.ScrollDir.START) {
+            along *= along < 0 ? Constants.AHEAD_PRIORITY_WEIGHT : Constants.BEHIND_PRIORITY_WEIGHT;
         }
+        return (float) Math.sqrt(along * along + across * across);
+    }
 
-        Holder holder = getPageAndCoordsByOffset(newOffset);
+    /**
+     * Load the parts of the row, or column when swiping horizontally, the holder is on
+     */
+    private int loadLine(Holder holder, int nbOfPartsLoadable) {
+        int loaded = 0;
         int documentPage = documentPage(holder.page);
         if (documentPage < 0) {
             return 0;
         }
+        usePage(holder.page);
         loadThumbnail(holder.page, documentPage);
 
         if (pdfView.isSwipeVertical()) {
-            int firstCol = MathUtils.floor(xOffset / colWidth);
+            int firstCol = MathUtils.floor(xOffset / grid.getColWidth());
             firstCol = MathUtils.min(firstCol - 1, 0);
-            int lastCol = MathUtils.ceil((xOffset + pdfView.getWidth()) / colWidth);
-            lastCol = MathUtils.max(lastCol + 1, colsRows.first);
+            int lastCol = MathUtils.ceil((xOffset + pdfView.getWidth()) / grid.getColWidth());
+            lastCol = MathUtils.max(lastCol + 1, grid.getCols());
             for (int col = firstCol; col <= lastCol; col++) {
-                if (loadCell(holder.page, documentPage, holder.row, col, pageRelativePartWidth, pageRelativePartHeight)) {
+                if (loadCell(holder.page, documentPage, holder.row, col)) {
                     loaded++;
                 }
                 if (loaded >= nbOfPartsLoadable) {
@@ -129,12 +281,12 @@ class PagesLoader {
                 }
             }
         } else {
-            int firstRow = MathUtils.floor(yOffset / rowHeight);
+            int firstRow = MathUtils.floor(yOffset / grid.getRowHeight());
             firstRow = MathUtils.min(firstRow - 1, 0);
-            int lastRow = MathUtils.ceil((yOffset + pdfView.getHeight()) / rowHeight);
-            lastRow = MathUtils.max(lastRow + 1, colsRows.second);
+            int lastRow = MathUtils.ceil((yOffset + pdfView.getHeight()) / grid.getRowHeight());
+            lastRow = MathUtils.max(lastRow + 1, grid.getRows());
             for (int row = firstRow; row <= lastRow; row++) {
-                if (loadCell(holder.page, documentPage, row, holder.col, pageRelativePartWidth, pageRelativePartHeight)) {
+                if (loadCell(holder.page, documentPage, row, holder.col)) {
                     loaded++;
                 }
                 if (loaded >= nbOfPartsLoadable) {
@@ -146,66 +298,71 @@ class PagesLoader {
         return loaded;
     }
 
-    public int loadVisible() {
-        int parts = 0;
+    /**
+     * Set the view the parts are loaded and prioritized around, given by its big strip offsets
+     */
+    private void setView(float currentXOffset, float currentYOffset) {
+        xOffset = -MathUtils.max(currentXOffset, 0);
+        yOffset = -MathUtils.max(currentYOffset, 0);
+    }
+
+    /**
+     * Load the previews, then the parts of the view set by {@link #setView(float, float)}
+     *
+     * @param parts number of parts already loaded by the pass
+     * @return number of parts loaded by the pass
+     */
+    private int loadVisible(int parts) {
         Holder firstHolder, lastHolder;
         if (pdfView.isSwipeVertical()) {
-            firstHolder = getPageAndCoordsByOffset(pdfView.getCurrentYOffset());
-            lastHolder = getPageAndCoordsByOffset(pdfView.getCurrentYOffset() - pdfView.getHeight() + 1);
-            int visibleRows = 0;
-            if (firstHolder.page == lastHolder.page) {
-                visibleRows = lastHolder.row - firstHolder.row + 1;
-            } else {
-                visibleRows += colsRows.second - firstHolder.row;
-                for (int page = firstHolder.page + 1; page < lastHolder.page; page++) {
-                    visibleRows += colsRows.second;
-                }
-                visibleRows += lastHolder.row + 1;
-            }
-
-            for (int i = 0; i < visibleRows && parts < CACHE_SIZE; i++) {
-                parts += loadRelative(i, CACHE_SIZE - parts, false);
-            }
+            firstHolder = getPageAndCoordsByOffset(-yOffset);
+            lastHolder = getPageAndCoordsByOffset(-yOffset - pdfView.getHeight() + 1);
         } else {
-            firstHolder = getPageAndCoordsByOffset(pdfView.getCurrentXOffset());
-            lastHolder = getPageAndCoordsByOffset(pdfView.getCurrentXOffset() - pdfView.getWidth() + 1);
-            int visibleCols = 0;
-            if (firstHolder.page == lastHolder.page) {
-                visibleCols = lastHolder.col - firstHolder.col + 1;
-            } else {
-                visibleCols += colsRows.first - firstHolder.col;
-                for (int page = firstHolder.page + 1; page < lastHolder.page; page++) {
-                    visibleCols += colsRows.first;
-                }
-                visibleCols += lastHolder.col + 1;
+            firstHolder = getPageAndCoordsByOffset(-xOffset);
+            lastHolder = getPageAndCoordsByOffset(-xOffset - pdfView.getWidth() + 1);
+        }
+        for (int page = firstHolder.page; page <= lastHolder.page; page++) {
+            int documentPage = documentPage(page);
+            if (documentPage >= 0) {
+                loadPreview(page, documentPage);
             }
+        }
 
-            for (int i = 0; i < visibleCols && parts < CACHE_SIZE; i++) {
-                parts += loadRelative(i, CACHE_SIZE - parts, false);
+        // Rows, or columns when swiping horizontally, from the first visible one to the last
+        int firstPage = firstHolder.page;
+        Holder holder = firstHolder;
+        while (parts < CACHE_SIZE) {
+            parts += loadLine(holder, CACHE_SIZE - parts);
+            if (holder.page > lastHolder.page || holder.page == lastHolder.page
+                    && (pdfView.isSwipeVertical() ? holder.row >= lastHolder.row : holder.col >= lastHolder.col)) {
+                break;
+            }
+            if (!next(holder)) {
+                break;
             }
         }
-        int prevDocPage = documentPage(firstHolder.page - 1);
+        int prevDocPage = documentPage(firstPage - 1);
         if (prevDocPage >= 0) {
-            loadThumbnail(firstHolder.page - 1, prevDocPage);
+            loadThumbnail(firstPage - 1, prevDocPage);
         }
-        int nextDocPage = documentPage(firstHolder.page + 1);
+        int nextDocPage = documentPage(firstPage + 1);
         if (nextDocPage >= 0) {
-            loadThumbnail(firstHolder.page + 1, nextDocPage);
+            loadThumbnail(firstPage + 1, nextDocPage);
         }
         return parts;
     }
 
-    private boolean loadCell(int userPage, int documentPage, int row, int col, float pageRelativePartWidth, float pageRelativePartHeight) {
+    private boolean loadCell(int userPage, int documentPage, int row, int col) {
 
-        float relX = pageRelativePartWidth * col;
-        float relY = pageRelativePartHeight * row;
-        float relWidth = pageRelativePartWidth;
-        float relHeight = pageRelativePartHeight;
+        float relX = grid.getRelativePartWidth() * col;
+        float relY = grid.getRelativePartHeight() * row;
+        float relWidth = grid.getRelativePartWidth();
+        float relHeight = grid.getRelativePartHeight();
 
         // Adjust width and height to
         // avoid being outside the page
-        float renderWidth = partRenderWidth;
-        float renderHeight = partRenderHeight;
+        float renderWidth = grid.getPartRenderWidth();
+        float renderHeight = grid.getPartRenderHeight();
         if (relX + relWidth > 1) {
             relWidth = 1 - relX;
         }
@@ -218,9 +375,15 @@ class PagesLoader {
 
         if (renderWidth > 0 && renderHeight > 0) {
             if (!pdfView.cacheManager.upPartIfContained(userPage, documentPage, renderWidth, renderHeight, pageRelativeBounds, cacheOrder)) {
+                float priority;
+                if (pdfView.isSwipeVertical()) {
+                    priority = priority(grid.getColWidth() * (col + 0.5f), pageStart + grid.getRowHeight() * (row + 0.5f));
+                } else {
+                    priority = priority(pageStart + grid.getColWidth() * (col + 0.5f), grid.getRowHeight() * (row + 0.5f));
+                }
                 pdfView.renderingAsyncTask.addRenderingTask(userPage, documentPage,
                         renderWidth, renderHeight, pageRelativeBounds, false, cacheOrder,
-                        pdfView.isBestQuality(), pdfView.isAnnotationRendering());
+                        pdfView.isBestQuality(), pdfView.isAnnotationRendering(), priority);
             }
 
             cacheOrder++;
@@ -230,29 +393,45 @@ class PagesLoader {
     }
 
     public void loadPages() {
-        scaledHeight = pdfView.toCurrentScale(pdfView.getOptimalPageHeight());
-        scaledWidth = pdfView.toCurrentScale(pdfView.getOptimalPageWidth());
-        thumbnailWidth = (int) (pdfView.getOptimalPageWidth() * Constants.THUMBNAIL_RATIO);
-        thumbnailHeight = (int) (pdfView.getOptimalPageHeight() * Constants.THUMBNAIL_RATIO);
-        colsRows = getPageColsRows();
-        xOffset = -MathUtils.max(pdfView.getCurrentXOffset(), 0);
-        yOffset = -MathUtils.max(pdfView.getCurrentYOffset(), 0);
-        rowHeight = scaledHeight / colsRows.second;
-        colWidth = scaledWidth / colsRows.first;
-        pageRelativePartWidth = 1f / (float) colsRows.first;
-        pageRelativePartHeight = 1f / (float) colsRows.second;
-        partRenderWidth = Constants.PART_SIZE / pageRelativePartWidth;
-        partRenderHeight = Constants.PART_SIZE / pageRelativePartHeight;
+        geometryPage = -1;
         cacheOrder = 1;
-        int loaded = loadVisible();
+        int loaded = 0;
+        if (pdfView.isFlingPrefetching()) {
+            // The view the fling lands on first, so it is not blank when the fling stops
+            setView(pdfView.getFlingFinalXOffset(), pdfView.getFlingFinalYOffset());
+            loaded = loadVisible(loaded);
+            if (pdfView.isFlingFast()) {
+                // The pages passed over would be dropped before being rendered
+                return;
+            }
+        }
+        setView(pdfView.getCurrentXOffset(), pdfView.getCurrentYOffset());
+        loaded = loadVisible(loaded);
+        Holder holder;
         if (pdfView.getScrollDir().equals(PDFView.ScrollDir.END)) { // if scrolling to end, preload next view
+            if (pdfView.isSwipeVertical()) {
+                holder = getPageAndCoordsByOffset(pdfView.getCurrentYOffset() - pdfView.getHeight() - 1);
+            } else {
+                holder = getPageAndCoordsByOffset(pdfView.getCurrentXOffset() - pdfView.getWidth());
+            }
             for (int i = 0; i < Constants.PRELOAD_COUNT && loaded < CACHE_SIZE; i++) {
-                loaded += loadRelative(i, loaded, true);
+                loaded += loadLine(holder, loaded);
+                if (!next(holder)) {
+                    break;
+                }
             }
         } else { // if scrolling to start, preload previous view
-            for (int i = 0; i > -Constants.PRELOAD_COUNT && loaded < CACHE_SIZE; i--) {
-                loaded += loadRelative(i, loaded, false);
+            if (pdfView.isSwipeVertical()) {
+                holder = getPageAndCoordsByOffset(pdfView.getCurrentYOffset() - 1);
+            } else {
+                holder = getPageAndCoordsByOffset(pdfView.getCurrentXOffset());
+            }
+            for (int i = 0; i < Constants.PRELOAD_COUNT && loaded < CACHE_SIZE; i++) {
+                loaded += loadLine(holder, loaded);
+                if (!previous(holder)) {
+                    break;
+                }
             }
         }
     }
-}
\ No newline at end of file
+}
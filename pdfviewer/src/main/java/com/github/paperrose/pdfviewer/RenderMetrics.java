@@ -0,0 +1,364 @@
+package com.github.paperrose.pdfviewer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Timings and counters of the render pipeline of a view, reset when a document is loaded.
+ * <p>
+ * Nothing is recorded until enabled, the pipeline then only reads a volatile flag, apart from
+ * the decode time recorded once per document. Counters and histograms are lock free so the
+ * render workers never contend on them, and {@link #snapshot()} reads them while they are
+ * recorded: a snapshot may count a tile in one histogram and not yet in another.
+ */
+public class RenderMetrics {
+
+    private volatile boolean enabled;
+
+    private volatile long loadStartNanos = -1;
+
+    private volatile long decodeNanos = -1;
+
+    private volatile long firstCoveredNanos = -1;
+
+    private final Histogram allocation = new Histogram();
+
+    private final Histogram render = new Histogram();
+
+    private final Histogram queueWait = new Histogram();
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    private final AtomicLong cacheHits = new AtomicLong();
+
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    private final AtomicLong compressedHits = new AtomicLong();
+
+    private final AtomicLong compressedMisses = new AtomicLong();
+
+    private final Histogram compressedDecode = new Histogram();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Reset the metrics for a document starting to load
+     */
+    void startLoad() {
+        decodeNanos = -1;
+        firstCoveredNanos = -1;
+        allocation.reset();
+        render.reset();
+        queueWait.reset();
+        queueDepth.set(0);
+        maxQueueDepth.set(0);
+        cacheHits.set(0);
+        cacheMisses.set(0);
+        compressedHits.set(0);
+        compressedMisses.set(0);
+        compressedDecode.reset();
+        loadStartNanos = System.nanoTime();
+    }
+
+    void recordDecode(long nanos) {
+        decodeNanos = nanos;
+    }
+
+    void recordAllocation(long nanos) {
+        allocation.record(nanos);
+    }
+
+    void recordRender(long nanos) {
+        render.record(nanos);
+    }
+
+    void recordQueueWait(long nanos) {
+        queueWait.record(nanos);
+    }
+
+    void recordQueueDepth(int depth) {
+        queueDepth.set(depth);
+        int max;
+        while (depth > (max = maxQueueDepth.get()) && !maxQueueDepth.compareAndSet(max, depth)) {
+            // Another worker raised the maximum meanwhile, compare again
+        }
+    }
+
+    void recordCacheLookup(boolean hit) {
+        (hit ? cacheHits : cacheMisses).incrementAndGet();
+    }
+
+    void recordCompressedLookup(boolean hit) {
+        (hit ? compressedHits : compressedMisses).incrementAndGet();
+    }
+
+    void recordCompressedDecode(long nanos) {
+        compressedDecode.record(nanos);
+    }
+
+    /**
+     * @return true if the first fully covered viewport of the document is already recorded
+     */
+    boolean isViewportCovered() {
+        return firstCoveredNanos >= 0;
+    }
+
+    void recordViewportCovered() {
+        if (firstCoveredNanos < 0 && loadStartNanos >= 0) {
+            firstCoveredNanos = System.nanoTime() - loadStartNanos;
+        }
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Durations counted in power of two buckets of nanoseconds
+     */
+    static class Histogram {
+
+        private static final int BUCKETS = 64;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        private final AtomicLong count = new AtomicLong();
+
+        private final AtomicLong totalNanos = new AtomicLong();
+
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos) {
+            nanos = Math.max(nanos, 0);
+            // Bucket i holds the durations below 2^i nanoseconds
+            buckets.incrementAndGet(Math.min(64 - Long.numberOfLeadingZeros(nanos), BUCKETS - 1));
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long max;
+            while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+                // Another worker raised the maximum meanwhile, compare again
+            }
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            count.set(0);
+            totalNanos.set(0);
+            maxNanos.set(0);
+        }
+
+        Timing snapshot() {
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+            }
+            return new Timing(counts, count.get(), totalNanos.get(), maxNanos.get());
+        }
+    }
+
+    /**
+     * Distribution of a duration at the time of the snapshot
+     */
+    public static final class Timing {
+
+        private final long[] buckets;
+
+        private final long count;
+
+        private final long totalNanos;
+
+        private final long maxNanos;
+
+        Timing(long[] buckets, long count, long totalNanos, long maxNanos) {
+            this.buckets = buckets;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMeanNanos() {
+            return count > 0 ? totalNanos / count : 0;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * @param fraction between 0 and 1, 0.99 for the 99th percentile
+         * @return upper bound of the duration below which the given fraction of the durations fall,
+         * exact within a factor of two
+         */
+        public long getPercentileNanos(double fraction) {
+            long total = 0;
+            for (long bucket : buckets) {
+                total += bucket;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(fraction * total);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return i < 63 ? Math.min(1L << i, maxNanos) : maxNanos;
+                }
+            }
+            return maxNanos;
+        }
+    }
+
+    /**
+     * Metrics of the loaded document at the time of the snapshot
+     */
+    public static final class Snapshot {
+
+        private final long decodeNanos;
+
+        private final long timeToFirstCoveredViewportNanos;
+
+        private final Timing allocation;
+
+        private final Timing render;
+
+        private final Timing queueWait;
+
+        private final int queueDepth;
+
+        private final int maxQueueDepth;
+
+        private final long cacheHits;
+
+        private final long cacheMisses;
+
+        private final long compressedHits;
+
+        private final long compressedMisses;
+
+        private final Timing compressedDecode;
+
+        Snapshot(RenderMetrics metrics) {
+            decodeNanos = metrics.decodeNanos;
+            timeToFirstCoveredViewportNanos = metrics.firstCoveredNanos;
+            allocation = metrics.allocation.snapshot();
+            render = metrics.render.snapshot();
+            queueWait = metrics.queueWait.snapshot();
+            queueDepth = metrics.queueDepth.get();
+            maxQueueDepth = metrics.maxQueueDepth.get();
+            cacheHits = metrics.cacheHits.get();
+            cacheMisses = metrics.cacheMisses.get();
+            compressedHits = metrics.compressedHits.get();
+            compressedMisses = metrics.compressedMisses.get();
+            compressedDecode = metrics.compressedDecode.snapshot();
+        }
+
+        /**
+         * @return time to open the document, -1 if it is not opened yet
+         */
+        public long getDecodeNanos() {
+            return decodeNanos;
+        }
+
+        /**
+         * @return time from the load to the first viewport fully covered at the current zoom,
+         * -1 if it did not happen yet
+         */
+        public long getTimeToFirstCoveredViewportNanos() {
+            return timeToFirstCoveredViewportNanos;
+        }
+
+        /**
+         * @return time taking a bitmap from the pool or allocating it, by rendered tile
+         */
+        public Timing getAllocation() {
+            return allocation;
+        }
+
+        /**
+         * @return time rendering the page into the bitmap, by rendered tile
+         */
+        public Timing getRender() {
+            return render;
+        }
+
+        /**
+         * @return time between a tile being requested and a worker taking it
+         */
+        public Timing getQueueWait() {
+            return queueWait;
+        }
+
+        /**
+         * @return number of tiles waiting for a worker when last sampled
+         */
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public int getMaxQueueDepth() {
+            return maxQueueDepth;
+        }
+
+        public long getCacheHits() {
+            return cacheHits;
+        }
+
+        public long getCacheMisses() {
+            return cacheMisses;
+        }
+
+        /**
+         * @return share of the parts wanted by the loader found in the cache, 0 if none was looked up
+         */
+        public float getCacheHitRate() {
+            long lookups = cacheHits + cacheMisses;
+            return lookups > 0 ? (float) cacheHits / lookups : 0;
+        }
+
+        /**
+         * @return parts about to be rendered found in the compressed tier
+         */
+        public long getCompressedHits() {
+            return compressedHits;
+        }
+
+        public long getCompressedMisses() {
+            return compressedMisses;
+        }
+
+        /**
+         * @return share of the parts about to be rendered found in the compressed tier, 0 if none was looked up
+         */
+        public float getCompressedHitRate() {
+            long lookups = compressedHits + compressedMisses;
+            return lookups > 0 ? (float) compressedHits / lookups : 0;
+        }
+
+        /**
+         * @return time inflating a part of the compressed tier into a bitmap, by hit
+         */
+        public Timing getCompressedDecode() {
+            return compressedDecode;
+        }
+    }
+}
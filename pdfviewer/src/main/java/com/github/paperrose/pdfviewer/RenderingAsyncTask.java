@@ -20,79 +20,226 @@ import android.graphics.Matrix;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.os.AsyncTask;
+import android.os.Process;
 
 import com.github.paperrose.pdfviewer.model.PagePart;
-import com.shockwave.pdfium.PdfDocument;
-import com.shockwave.pdfium.PdfiumCore;
+import com.github.paperrose.pdfviewer.util.LongHashMap;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Set;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Renders the queued parts on several workers. The task thread is the first worker,
+ * the other ones run on the given executor for the lifetime of the task.
+ * Pdfium is not thread safe, so every call on the document is serialized on
+ * the lock of its registry entry, shared with the other views showing it; the workers overlap everything else (bitmap allocation,
+ * tile classification, disk cache, publishing).
+ * <p>
+ * Tasks are queued by priority, see {@link RenderingTaskComparator}. {@link PagesLoader}
+ * requests the parts it wants between {@link #startPass()} and {@link #endPass()}:
+ * tasks requested again keep their place in the queue, or keep rendering, with their
+ * new priority, and only the tasks that were not requested anymore are dropped.
+ * <p>
+ * Every part task also carries the {@link PDFView#getRenderEpoch() render epoch} of the
+ * zoom level it was requested for. A dropped or superseded task is checked before a bitmap
+ * is taken, before the page is rendered and before the part is published, so most of them never
+ * reach the renderer.
+ */
 class RenderingAsyncTask extends AsyncTask<Void, PagePart, Void> {
 
-    private PdfiumCore pdfiumCore;
-    private PdfDocument pdfDocument;
+    private final DocumentRegistry.Entry document;
+
+    /**
+     * Tasks waiting for a worker, also the monitor guarding all the task state
+     */
+    private final PriorityQueue<RenderingTask> renderingTasks;
+
+    /**
+     * Tasks taken by a worker and still wanted
+     */
+    private final List<RenderingTask> runningTasks = new ArrayList<>();
+
+    /**
+     * Waiting and running tasks by key, to find a task requested again
+     */
+    private final LongHashMap<RenderingTask> tasksIndex = new LongHashMap<>();
+
+    /**
+     * Tasks requested during the current pass
+     */
+    private final List<RenderingTask> passTasks = new ArrayList<>();
+
+    private int pass = 0;
 
-    private final List<RenderingTask> renderingTasks;
     private PDFView pdfView;
 
-    private RectF renderBounds = new RectF();
-    private Rect roundedRenderBounds = new Rect();
-    private Matrix renderMatrix = new Matrix();
-    private final Set<Integer> openedPages = new HashSet<>();
+    private final BitmapPool bitmapPool;
+
+    private final RenderMetrics metrics;
+
+    /**
+     * Tiles of the previous sessions, null if disabled or the document can't be identified
+     */
+    private final DiskTileCache diskTileCache;
+
+    private final String documentFingerprint;
+
+    private final CompressedTileCache compressedTileCache;
+
+    /**
+     * Finds the single color tiles and the ones without color
+     */
+    private final TileClassifier tileClassifier;
+
+    private final int workerCount;
+
+    private final Executor workerExecutor;
+
+    private boolean stopped = false;
+
+    /**
+     * Tasks dropped before pdfium rendered them
+     */
+    private final AtomicLong cancelledCount = new AtomicLong();
+
+    /**
+     * Tasks dropped after pdfium rendered them
+     */
+    private final AtomicLong wastedCount = new AtomicLong();
 
-    public RenderingAsyncTask(PDFView pdfView, PdfiumCore pdfiumCore, PdfDocument pdfDocument) {
+    /**
+     * Tiles rendered without color and stored in ALPHA_8
+     */
+    private final AtomicLong grayscaleCount = new AtomicLong();
+
+    /**
+     * Tiles rendered as a single color and kept without a bitmap
+     */
+    private final AtomicLong solidCount = new AtomicLong();
+
+    public RenderingAsyncTask(PDFView pdfView, DocumentRegistry.Entry document, int workerCount, Executor workerExecutor) {
         this.pdfView = pdfView;
-        this.pdfiumCore = pdfiumCore;
-        this.pdfDocument = pdfDocument;
-        this.renderingTasks = Collections.synchronizedList(new ArrayList<RenderingTask>());
+        this.document = document;
+        this.bitmapPool = pdfView.bitmapPool;
+        this.metrics = pdfView.renderMetrics;
+        this.documentFingerprint = pdfView.getDocumentFingerprint();
+        this.diskTileCache = documentFingerprint != null ? pdfView.diskTileCache : null;
+        this.compressedTileCache = pdfView.compressedTileCache;
+        this.tileClassifier = new TileClassifier(pdfView.isGrayscaleTiles());
+        this.workerCount = Math.max(1, workerCount);
+        this.workerExecutor = workerExecutor;
+        this.renderingTasks = new PriorityQueue<>(64, new RenderingTaskComparator());
 
     }
 
-    public void addRenderingTask(int userPage, int page, float width, float height, RectF bounds, boolean thumbnail, int cacheOrder, boolean bestQuality, boolean annotationRendering) {
-        RenderingTask task = new RenderingTask(width, height, bounds, userPage, page, thumbnail, cacheOrder, bestQuality, annotationRendering);
-        renderingTasks.add(task);
-        wakeUp();
+    /**
+     * Start collecting the tasks wanted by a new loading pass
+     */
+    public void startPass() {
+        synchronized (renderingTasks) {
+            pass++;
+            passTasks.clear();
+        }
     }
 
-    @Override
-    protected Void doInBackground(Void... params) {
-        while (!isCancelled()) {
-
-            // Proceed all tasks
-            while (true) {
-                RenderingTask task;
-                synchronized (renderingTasks) {
-                    if (!renderingTasks.isEmpty()) {
-                        task = renderingTasks.get(0);
-                    } else {
-                        break;
-                    }
+    /**
+     * Request a part during a pass with the given priority, the lower the sooner.
+     * The task is queued by {@link #endPass()}.
+     */
+    public void addRenderingTask(int userPage, int page, float width, float height, RectF bounds, boolean thumbnail, int cacheOrder, boolean bestQuality, boolean annotationRendering, float priority) {
+        long key = taskKey(userPage, page, width, height, bounds, thumbnail);
+        synchronized (renderingTasks) {
+            RenderingTask task = tasksIndex.get(key);
+            if (task == null || !task.matches(userPage, page, width, height, bounds, thumbnail)) {
+                task = new RenderingTask(width, height, bounds, userPage, page, thumbnail, cacheOrder, bestQuality, annotationRendering);
+                task.key = key;
+                task.epoch = pdfView.getRenderEpoch();
+                task.pass = pass - 1;
+                task.nextPriority = priority;
+                task.requestNanos = metrics.isEnabled() ? System.nanoTime() : 0;
+                tasksIndex.put(key, task);
+            } else if (task.pass == pass) {
+                task.nextPriority = Math.min(task.nextPriority, priority);
+                return;
+            } else {
+                task.nextPriority = priority;
+                // Still wanted at the current zoom level
+                task.epoch = pdfView.getRenderEpoch();
+            }
+            task.cacheOrder = cacheOrder;
+            task.pass = pass;
+            passTasks.add(task);
+        }
+    }
+
+    /**
+     * Queue the tasks of the pass by their new priority and drop the ones it did not request
+     */
+    public void endPass() {
+        synchronized (renderingTasks) {
+            for (RenderingTask task : renderingTasks) {
+                if (task.pass != pass) {
+                    removeFromIndex(task);
                 }
-                //it is very rare case, but sometimes null can appear
-                if (task != null) {
-                    PagePart part = proceed(task);
-                    if (part == null) {
-                        break;
-                    } else if (renderingTasks.remove(task)) {
-                        publishProgress(part);
-                    } else {
-                        part.getRenderedBitmap().recycle();
-                    }
+            }
+            renderingTasks.clear();
+            for (int i = runningTasks.size() - 1; i >= 0; i--) {
+                RenderingTask task = runningTasks.get(i);
+                if (task.pass != pass) {
+                    runningTasks.remove(i);
+                    task.dropped = true;
+                    removeFromIndex(task);
                 }
             }
-
-            // Wait for new task, return if canceled
-            if (!waitForRenderingTasks() || isCancelled()) {
-                return null;
+            for (RenderingTask task : passTasks) {
+                task.priority = task.nextPriority;
+                // Finished since it was requested, its part is already published or dropped
+                if (!task.running && !task.finished) {
+                    renderingTasks.offer(task);
+                }
             }
+            passTasks.clear();
+            if (metrics.isEnabled()) {
+                metrics.recordQueueDepth(renderingTasks.size());
+            }
+            renderingTasks.notifyAll();
+        }
+    }
 
+    private void removeFromIndex(RenderingTask task) {
+        if (tasksIndex.get(task.key) == task) {
+            tasksIndex.remove(task.key);
         }
-        return null;
+    }
 
+    private static long taskKey(int userPage, int page, float width, float height, RectF bounds, boolean thumbnail) {
+        long key = PagePart.keyOf(userPage, page, width, height, bounds);
+        return thumbnail ? ~key : key;
+    }
+
+    @Override
+    protected Void doInBackground(Void... params) {
+        for (int i = 1; i < workerCount; i++) {
+            try {
+                workerExecutor.execute(new Worker(true));
+            } catch (RuntimeException e) {
+                // Executor saturated or shut down, keep rendering with the workers we have
+                break;
+            }
+        }
+        try {
+            new Worker(false).run();
+        } finally {
+            synchronized (renderingTasks) {
+                stopped = true;
+                renderingTasks.notifyAll();
+            }
+        }
+        return null;
     }
 
     @Override
@@ -100,73 +247,279 @@ class RenderingAsyncTask extends AsyncTask<Void, PagePart, Void> {
         pdfView.onBitmapRendered(part[0]);
     }
 
-    private boolean waitForRenderingTasks() {
-        try {
-            synchronized (renderingTasks) {
-                renderingTasks.wait();
+    /**
+     * Take the next task, waiting for one if there is none.
+     *
+     * @return the task, or null if the rendering is stopped
+     */
+    private RenderingTask takeTask() {
+        synchronized (renderingTasks) {
+            while (renderingTasks.isEmpty()) {
+                if (stopped || isCancelled()) {
+                    return null;
+                }
+                try {
+                    renderingTasks.wait();
+                } catch (InterruptedException e) {
+                    return null;
+                }
+            }
+            if (stopped || isCancelled()) {
+                return null;
+            }
+            RenderingTask task = renderingTasks.poll();
+            task.running = true;
+            runningTasks.add(task);
+            if (metrics.isEnabled()) {
+                if (task.requestNanos != 0) {
+                    metrics.recordQueueWait(System.nanoTime() - task.requestNanos);
+                }
+                metrics.recordQueueDepth(renderingTasks.size());
             }
-            return true;
-        } catch (InterruptedException e) {
-            return false;
+            return task;
         }
     }
 
-    private PagePart proceed(RenderingTask renderingTask) {
-        if (!openedPages.contains(renderingTask.page)) {
-            openedPages.add(renderingTask.page);
-            pdfiumCore.openPage(pdfDocument, renderingTask.page);
+    /**
+     * @return true if the task was still wanted when it finished
+     */
+    private boolean finishTask(RenderingTask task) {
+        synchronized (renderingTasks) {
+            task.running = false;
+            task.finished = true;
+            removeFromIndex(task);
+            return runningTasks.remove(task);
         }
-        int w = Math.round(renderingTask.width);
-        int h = Math.round(renderingTask.height);
-        if (w <= 0 || h <= 0) return null;
-        Bitmap render = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
-        calculateBounds(w, h, renderingTask.bounds);
+    }
 
-        if (!isCancelled()) {
-            pdfiumCore.renderPageBitmap(pdfDocument, render, renderingTask.page,
-                    roundedRenderBounds.left, roundedRenderBounds.top,
-                    roundedRenderBounds.width(), roundedRenderBounds.height(), renderingTask.annotationRendering);
-        } else {
-            render.recycle();
-            return null;
+    public void removeAllTasks() {
+        synchronized (renderingTasks) {
+            renderingTasks.clear();
+            for (RenderingTask task : runningTasks) {
+                task.dropped = true;
+            }
+            runningTasks.clear();
+            tasksIndex.clear();
+            passTasks.clear();
         }
+    }
 
-        if (!renderingTask.bestQuality) {
-            Bitmap cpy = render.copy(Bitmap.Config.RGB_565, false);
-            render.recycle();
-            render = cpy;
-        }
+    public long getCancelledCount() {
+        return cancelledCount.get();
+    }
 
-        return new PagePart(renderingTask.userPage, renderingTask.page, render, //
-                renderingTask.width, renderingTask.height, //
-                renderingTask.bounds, renderingTask.thumbnail, //
-                renderingTask.cacheOrder);
+    public long getWastedCount() {
+        return wastedCount.get();
     }
 
-    private void calculateBounds(int width, int height, RectF pageSliceBounds) {
-        renderMatrix.reset();
-        renderMatrix.postTranslate(-pageSliceBounds.left * width, -pageSliceBounds.top * height);
-        renderMatrix.postScale(1 / pageSliceBounds.width(), 1 / pageSliceBounds.height());
+    public long getGrayscaleCount() {
+        return grayscaleCount.get();
+    }
 
-        renderBounds.set(0, 0, width, height);
-        renderMatrix.mapRect(renderBounds);
-        renderBounds.round(roundedRenderBounds);
+    public long getSolidCount() {
+        return solidCount.get();
     }
 
-    public void removeAllTasks() {
-        synchronized (renderingTasks) {
-            renderingTasks.clear();
+    /**
+     * Return false if the task was dropped or its zoom level is not the current one anymore
+     */
+    private boolean isWanted(RenderingTask task) {
+        return !task.dropped && !isCancelled()
+                && (task.thumbnail || task.epoch == pdfView.getRenderEpoch());
+    }
+
+    private class Worker implements Runnable {
+
+        private final boolean background;
+
+        private RectF renderBounds = new RectF();
+        private Rect roundedRenderBounds = new Rect();
+        private Matrix renderMatrix = new Matrix();
+        private TileClassifier.Buffers classifierBuffers = new TileClassifier.Buffers();
+        private CompressedTileCache.Decoder decoder = new CompressedTileCache.Decoder();
+
+        /**
+         * True if the last task proceeded was rendered by the renderer, not read from a cache
+         */
+        private boolean rendered;
+
+        Worker(boolean background) {
+            this.background = background;
+        }
+
+        @Override
+        public void run() {
+            if (background) {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            }
+            RenderingTask task;
+            try {
+                while ((task = takeTask()) != null) {
+                    PagePart part = proceed(task);
+                    if (part == null) {
+                        finishTask(task);
+                    } else if (finishTask(task) && isWanted(task)) {
+                        publishProgress(part);
+                    } else {
+                        // Parts read back from a cache cost no render
+                        if (rendered) {
+                            wastedCount.incrementAndGet();
+                        }
+                        bitmapPool.release(part.getRenderedBitmap());
+                    }
+                }
+            } finally {
+                decoder.end();
+            }
+        }
+
+        private PagePart proceed(RenderingTask renderingTask) {
+            rendered = false;
+            int w = Math.round(renderingTask.width);
+            int h = Math.round(renderingTask.height);
+            if (w <= 0 || h <= 0) return null;
+            if (!isWanted(renderingTask)) {
+                cancelledCount.incrementAndGet();
+                return null;
+            }
+
+            // Evicted parts are cheaper to inflate than to render again
+            if (!renderingTask.thumbnail) {
+                Bitmap kept = compressedTileCache.get(renderingTask.userPage, renderingTask.page,
+                        renderingTask.width, renderingTask.height, renderingTask.bounds, bitmapPool, decoder);
+                if (kept != null) {
+                    return createPart(renderingTask, kept);
+                }
+            }
+
+            String diskKey = null;
+            if (diskTileCache != null) {
+                diskKey = DiskTileCache.keyOf(documentFingerprint, renderingTask.page,
+                        renderingTask.width, renderingTask.height, renderingTask.bounds,
+                        renderingTask.bestQuality, renderingTask.annotationRendering);
+                Bitmap stored = diskTileCache.get(diskKey, renderingTask.page,
+                        renderingTask.width, renderingTask.height, renderingTask.bounds, bitmapPool);
+                if (stored != null) {
+                    return createPart(renderingTask, stored);
+                }
+            }
+
+            // Timed only while the metrics are enabled, the clock is read only then
+            boolean timed = metrics.isEnabled();
+            long start = timed ? System.nanoTime() : 0;
+
+            // Pooled bitmaps are not cleared, pdfium fills the whole bitmap before drawing the page.
+            // For RGB_565 pdfium-android renders into a native 24 bits buffer, then converts it into the
+            // bitmap: 5 bytes per pixel at peak instead of the 6 of an ARGB_8888 tile drawn into RGB_565.
+            Bitmap.Config config = renderingTask.bestQuality ? Bitmap.Config.ARGB_8888 : Bitmap.Config.RGB_565;
+            Bitmap render = bitmapPool.acquire(w, h, config);
+            if (timed) {
+                metrics.recordAllocation(System.nanoTime() - start);
+            }
+            calculateBounds(w, h, renderingTask.bounds);
+
+            synchronized (document.lock) {
+                // Other workers may have held the document for a while, or the document was closed
+                if (!isWanted(renderingTask) || document.isClosed()) {
+                    cancelledCount.incrementAndGet();
+                    bitmapPool.release(render);
+                    return null;
+                }
+                // Opening the page may recycle the document handle, read it afterwards
+                document.openPage(renderingTask.page);
+                start = timed ? System.nanoTime() : 0;
+                document.handle.renderPage(render, renderingTask.page,
+                        roundedRenderBounds.left, roundedRenderBounds.top,
+                        roundedRenderBounds.width(), roundedRenderBounds.height(), renderingTask.annotationRendering);
+                rendered = true;
+                if (timed) {
+                    metrics.recordRender(System.nanoTime() - start);
+                }
+            }
+
+            // Scanned outside of the document lock. A single color tile is kept without a bitmap,
+            // and not persisted, a tile without color is kept in one byte per pixel.
+            int content = tileClassifier.classify(render, renderingTask.page, classifierBuffers);
+            if (content == TileClassifier.SOLID) {
+                bitmapPool.release(render);
+                solidCount.incrementAndGet();
+                return createPart(renderingTask, classifierBuffers.getSolidColor());
+            } else if (content == TileClassifier.GRAY) {
+                Bitmap gray = tileClassifier.toGrayscale(render, bitmapPool, classifierBuffers);
+                bitmapPool.release(render);
+                render = gray;
+                grayscaleCount.incrementAndGet();
+            }
+
+            if (diskKey != null) {
+                diskTileCache.put(diskKey, renderingTask.page,
+                        renderingTask.width, renderingTask.height, renderingTask.bounds, render);
+            }
+            return createPart(renderingTask, render);
+        }
+
+        private PagePart createPart(RenderingTask renderingTask, Bitmap render) {
+            return new PagePart(renderingTask.userPage, renderingTask.page, render, //
+                    renderingTask.width, renderingTask.height, //
+                    renderingTask.bounds, renderingTask.thumbnail, //
+                    renderingTask.cacheOrder);
+        }
+
+        private PagePart createPart(RenderingTask renderingTask, int color) {
+            return new PagePart(renderingTask.userPage, renderingTask.page, color, //
+                    renderingTask.width, renderingTask.height, //
+                    renderingTask.bounds, renderingTask.thumbnail, //
+                    renderingTask.cacheOrder);
+        }
+
+        private void calculateBounds(int width, int height, RectF pageSliceBounds) {
+            renderMatrix.reset();
+            renderMatrix.postTranslate(-pageSliceBounds.left * width, -pageSliceBounds.top * height);
+            renderMatrix.postScale(1 / pageSliceBounds.width(), 1 / pageSliceBounds.height());
+
+            renderBounds.set(0, 0, width, height);
+            renderMatrix.mapRect(renderBounds);
+            renderBounds.round(roundedRenderBounds);
         }
     }
 
-    public void wakeUp() {
-        synchronized (renderingTasks) {
-            renderingTasks.notify();
+    /**
+     * Thumbnails first, then the lowest priority value
+     */
+    private static class RenderingTaskComparator implements Comparator<RenderingTask> {
+        @Override
+        public int compare(RenderingTask task1, RenderingTask task2) {
+            if (task1.thumbnail != task2.thumbnail) {
+                return task1.thumbnail ? -1 : 1;
+            }
+            return Float.compare(task1.priority, task2.priority);
         }
     }
 
     private class RenderingTask {
 
+        long key;
+
+        /**
+         * Time of the first request, 0 if the metrics were disabled
+         */
+        long requestNanos;
+
+        int pass;
+
+        int epoch;
+
+        volatile boolean dropped;
+
+        float priority, nextPriority;
+
+        boolean running;
+
+        /**
+         * Set once a worker is done with the task, a later pass requests a new task
+         */
+        boolean finished;
+
         float width, height;
 
         RectF bounds;
@@ -196,6 +549,14 @@ class RenderingAsyncTask extends AsyncTask<Void, PagePart, Void> {
             this.annotationRendering = annotationRendering;
         }
 
+        boolean matches(int userPage, int page, float width, float height, RectF bounds, boolean thumbnail) {
+            return this.userPage == userPage && this.page == page
+                    && this.width == width && this.height == height
+                    && this.thumbnail == thumbnail
+                    && this.bounds.left == bounds.left && this.bounds.top == bounds.top
+                    && this.bounds.right == bounds.right && this.bounds.bottom == bounds.bottom;
+        }
+
     }
 
 }
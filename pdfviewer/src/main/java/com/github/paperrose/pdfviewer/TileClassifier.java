@@ -0,0 +1,175 @@
+package com.github.paperrose.pdfviewer;
+
+import android.graphics.Bitmap;
+import android.util.SparseBooleanArray;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Finds the rendered tiles that can be kept in less memory, in a single pass over their pixels:
+ * <ul>
+ * <li>tiles of a single color, blank margins mostly, are kept as that color without a bitmap</li>
+ * <li>tiles without color are stored in {@link Bitmap.Config#ALPHA_8}, one byte per pixel
+ * instead of two or four. The alpha is the ink coverage, drawn in black over the white paper
+ * pdfium renders the pages on, see {@link PDFView#drawPart}. Monochrome tiles are stored the
+ * same way, Android has no smaller format.</li>
+ * </ul>
+ * Pages with color are remembered: once a tile of a page has color, the other tiles of the page
+ * are only checked for a single color. The channels of every other tile are compared, a render
+ * without color at a lower resolution can miss the thin colored details of a tile.
+ * Thread safe, each worker gives its own {@link Buffers}.
+ */
+class TileClassifier {
+
+    /**
+     * The tile has color, or grayscale tiles are disabled, keep it as rendered
+     */
+    static final int COLOR = 0;
+
+    /**
+     * The tile is a single color, see {@link Buffers#getSolidColor()}
+     */
+    static final int SOLID = 1;
+
+    /**
+     * The tile has no color, see {@link #toGrayscale}
+     */
+    static final int GRAY = 2;
+
+    /**
+     * Largest difference between the channels of a gray pixel, RGB_565 rounds them differently
+     */
+    private static final int GRAY_TOLERANCE = 8;
+
+    private final boolean grayscale;
+
+    /**
+     * Document pages known to have color
+     */
+    private final SparseBooleanArray colorPages = new SparseBooleanArray();
+
+    /**
+     * @param grayscale true to find the tiles without color, otherwise only single color tiles are found
+     */
+    TileClassifier(boolean grayscale) {
+        this.grayscale = grayscale;
+    }
+
+    private boolean hasColor(int page) {
+        synchronized (colorPages) {
+            return colorPages.get(page);
+        }
+    }
+
+    private void setHasColor(int page) {
+        synchronized (colorPages) {
+            colorPages.put(page, true);
+        }
+    }
+
+    /**
+     * @param buffers buffers of the calling worker, receiving the single color or the ALPHA_8 pixels of the tile
+     * @return {@link #COLOR}, {@link #SOLID} or {@link #GRAY}
+     */
+    public int classify(Bitmap render, int page, Buffers buffers) {
+        int width = render.getWidth();
+        int height = render.getHeight();
+        int count = width * height;
+        int[] argb = buffers.argb(count);
+        render.getPixels(argb, 0, width, 0, 0, width, height);
+        boolean gray = grayscale && !hasColor(page);
+        byte[] bytes = gray ? buffers.pixels(count).array() : null;
+        boolean solid = true;
+        int first = argb[0];
+        for (int i = 0; i < count; i++) {
+            int color = argb[i];
+            if (solid && color != first) {
+                solid = false;
+                if (!gray) {
+                    return COLOR;
+                }
+            }
+            if (!gray) {
+                continue;
+            }
+            int r = (color >> 16) & 0xFF;
+            int g = (color >> 8) & 0xFF;
+            int b = color & 0xFF;
+            if (Math.abs(r - g) > GRAY_TOLERANCE || Math.abs(g - b) > GRAY_TOLERANCE
+                    || Math.abs(r - b) > GRAY_TOLERANCE) {
+                setHasColor(page);
+                if (!solid) {
+                    return COLOR;
+                }
+                gray = false;
+                continue;
+            }
+            // Luminance, the ink is its complement
+            bytes[i] = (byte) (255 - ((r * 77 + g * 150 + b * 29) >> 8));
+        }
+        if (solid) {
+            buffers.solidColor = first;
+            return SOLID;
+        }
+        return GRAY;
+    }
+
+    /**
+     * Copy the pixels of a tile just classified {@link #GRAY} to a pooled ALPHA_8 bitmap
+     */
+    public Bitmap toGrayscale(Bitmap render, BitmapPool bitmapPool, Buffers buffers) {
+        int width = render.getWidth();
+        int height = render.getHeight();
+        Bitmap gray = bitmapPool.acquire(width, height, Bitmap.Config.ALPHA_8);
+        int rowBytes = gray.getRowBytes();
+        ByteBuffer buffer = buffers.pixels(gray.getByteCount());
+        if (rowBytes != width) {
+            // Padded rows, moved from the last one so none is overwritten before being moved
+            byte[] bytes = buffer.array();
+            for (int y = height - 1; y > 0; y--) {
+                System.arraycopy(bytes, y * width, bytes, y * rowBytes, width);
+            }
+        }
+        gray.copyPixelsFromBuffer(buffer);
+        return gray;
+    }
+
+    /**
+     * Buffers reused by a worker for every tile it scans, grown to the largest tile
+     */
+    static class Buffers {
+
+        private int[] argb = new int[0];
+
+        private ByteBuffer pixels = ByteBuffer.allocate(0);
+
+        private int solidColor;
+
+        /**
+         * @return the color of the last tile classified {@link #SOLID}
+         */
+        int getSolidColor() {
+            return solidColor;
+        }
+
+        int[] argb(int count) {
+            if (argb.length < count) {
+                argb = new int[count];
+            }
+            return argb;
+        }
+
+        /**
+         * Grow the pixels buffer if needed, keeping its content
+         */
+        ByteBuffer pixels(int byteCount) {
+            if (pixels.capacity() < byteCount) {
+                ByteBuffer grown = ByteBuffer.allocate(byteCount);
+                grown.put(pixels.array());
+                pixels = grown;
+            }
+            pixels.clear();
+            return pixels;
+        }
+    }
+}
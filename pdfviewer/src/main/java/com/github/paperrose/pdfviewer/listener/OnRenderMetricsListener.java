@@ -0,0 +1,17 @@
+package com.github.paperrose.pdfviewer.listener;
+
+import com.github.paperrose.pdfviewer.RenderMetrics;
+
+/**
+ * Implement this interface to receive the render metrics of PDFView
+ */
+public interface OnRenderMetricsListener {
+
+    /**
+     * Called on the UI thread when the first viewport is fully covered,
+     * then at most every {@link com.github.paperrose.pdfviewer.util.Constants#RENDER_METRICS_INTERVAL} ms while tiles are rendered
+     *
+     * @param snapshot metrics of the loaded document
+     */
+    void onRenderMetrics(RenderMetrics.Snapshot snapshot);
+}
@@ -26,6 +26,11 @@ public class PagePart {
 
     private Bitmap renderedBitmap;
 
+    /**
+     * Color of the whole part if it has no bitmap
+     */
+    private int color;
+
     private float width, height;
 
     private RectF pageRelativeBounds;
@@ -34,14 +39,68 @@ public class PagePart {
 
     private int cacheOrder;
 
+    private final long key;
+
     public PagePart(int userPage, int page, Bitmap renderedBitmap, float width, float height, RectF pageRelativeBounds, boolean thumbnail, int cacheOrder) {
         super();
         this.userPage = userPage;
         this.page = page;
         this.renderedBitmap = renderedBitmap;
+        this.width = width;
+        this.height = height;
         this.pageRelativeBounds = pageRelativeBounds;
         this.thumbnail = thumbnail;
         this.cacheOrder = cacheOrder;
+        this.key = keyOf(userPage, page, width, height, pageRelativeBounds);
+    }
+
+    /**
+     * A part rendered as a single color, kept without a bitmap
+     */
+    public PagePart(int userPage, int page, int color, float width, float height, RectF pageRelativeBounds, boolean thumbnail, int cacheOrder) {
+        this(userPage, page, null, width, height, pageRelativeBounds, thumbnail, cacheOrder);
+        this.color = color;
+    }
+
+    /**
+     * Hash of the fields compared by {@link #equals(Object)}, with the bounds and the render
+     * size quantized. Equal parts always have the same key, different parts almost never do,
+     * so callers looking up a part by key should still check {@link #matches}.
+     */
+    public static long keyOf(int userPage, int page, float width, float height, RectF pageRelativeBounds) {
+        long hash = mix(((long) userPage << 32) | (page & 0xFFFFFFFFL));
+        hash = mix(hash ^ (((long) quantize(width) << 32) | (quantize(height) & 0xFFFFFFFFL)));
+        hash = mix(hash ^ (((long) quantize(pageRelativeBounds.left) << 32) | (quantize(pageRelativeBounds.top) & 0xFFFFFFFFL)));
+        hash = mix(hash ^ (((long) quantize(pageRelativeBounds.right) << 32) | (quantize(pageRelativeBounds.bottom) & 0xFFFFFFFFL)));
+        return hash;
+    }
+
+    private static int quantize(float value) {
+        return Math.round(value * (1 << 16));
+    }
+
+    private static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xFF51AFD7ED558CCDL;
+        value = (value ^ (value >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return value ^ (value >>> 33);
+    }
+
+    public long getKey() {
+        return key;
+    }
+
+    /**
+     * Return true if this part is the one described by the given values
+     */
+    public boolean matches(int userPage, int page, float width, float height, RectF pageRelativeBounds) {
+        return this.page == page
+                && this.userPage == userPage
+                && this.width == width
+                && this.height == height
+                && this.pageRelativeBounds.left == pageRelativeBounds.left
+                && this.pageRelativeBounds.right == pageRelativeBounds.right
+                && this.pageRelativeBounds.top == pageRelativeBounds.top
+                && this.pageRelativeBounds.bottom == pageRelativeBounds.bottom;
     }
 
     public int getCacheOrder() {
@@ -56,10 +115,21 @@ public class PagePart {
         return userPage;
     }
 
+    /**
+     * @return the rendered bitmap, null for a part of a single color
+     */
     public Bitmap getRenderedBitmap() {
         return renderedBitmap;
     }
 
+    public boolean isSolid() {
+        return renderedBitmap == null;
+    }
+
+    public int getColor() {
+        return color;
+    }
+
     public RectF getPageRelativeBounds() {
         return pageRelativeBounds;
     }
@@ -87,14 +157,12 @@ public class PagePart {
         }
 
         PagePart part = (PagePart) obj;
-        return part.getPage() == page
-                && part.getUserPage() == userPage
-                && part.getWidth() == width
-                && part.getHeight() == height
-                && part.getPageRelativeBounds().left == pageRelativeBounds.left
-                && part.getPageRelativeBounds().right == pageRelativeBounds.right
-                && part.getPageRelativeBounds().top == pageRelativeBounds.top
-                && part.getPageRelativeBounds().bottom == pageRelativeBounds.bottom;
+        return matches(part.getUserPage(), part.getPage(), part.getWidth(), part.getHeight(), part.getPageRelativeBounds());
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (key ^ (key >>> 32));
     }
 
 }
@@ -0,0 +1,54 @@
+package com.github.paperrose.pdfviewer.render;
+
+import android.graphics.Bitmap;
+import android.os.ParcelFileDescriptor;
+
+import com.shockwave.pdfium.PdfDocument;
+import com.shockwave.pdfium.util.Size;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Backend opening and rendering documents, {@link PdfiumPageRenderer} by default.
+ * <p>
+ * Calls on an opened {@link Document} are made by one thread at a time, holding the lock of the document.
+ */
+public interface PageRenderer {
+
+    /**
+     * Open a document, taking ownership of the file descriptor
+     */
+    Document open(ParcelFileDescriptor fd, String password) throws IOException;
+
+    Document open(byte[] data, String password) throws IOException;
+
+    interface Document {
+
+        int getPageCount();
+
+        /**
+         * @return size of the page in pixels, read without opening the page
+         */
+        Size getPageSize(int page);
+
+        void openPage(int page);
+
+        /**
+         * Render a region of an opened page into the bitmap, either ARGB_8888 or RGB_565
+         *
+         * @param startX left of the page in the bitmap, zero or negative
+         * @param startY top of the page in the bitmap, zero or negative
+         * @param width  width of the whole page as rendered
+         * @param height height of the whole page as rendered
+         */
+        void renderPage(Bitmap bitmap, int page, int startX, int startY, int width, int height,
+                        boolean annotationRendering);
+
+        PdfDocument.Meta getMeta();
+
+        List<PdfDocument.Bookmark> getTableOfContents();
+
+        void close();
+    }
+}
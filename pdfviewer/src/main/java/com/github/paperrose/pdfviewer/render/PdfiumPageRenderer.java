@@ -0,0 +1,93 @@
+package com.github.paperrose.pdfviewer.render;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.ParcelFileDescriptor;
+
+import com.shockwave.pdfium.PdfDocument;
+import com.shockwave.pdfium.PdfiumCore;
+import com.shockwave.pdfium.util.Size;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Renders documents with pdfium
+ */
+public class PdfiumPageRenderer implements PageRenderer {
+
+    private final PdfiumCore pdfiumCore;
+
+    public PdfiumPageRenderer(Context context) {
+        this(new PdfiumCore(context));
+    }
+
+    public PdfiumPageRenderer(PdfiumCore pdfiumCore) {
+        this.pdfiumCore = pdfiumCore;
+    }
+
+    @Override
+    public Document open(ParcelFileDescriptor fd, String password) throws IOException {
+        return new PdfiumDocument(pdfiumCore, pdfiumCore.newDocument(fd, password));
+    }
+
+    @Override
+    public Document open(byte[] data, String password) throws IOException {
+        return new PdfiumDocument(pdfiumCore, pdfiumCore.newDocument(data, password));
+    }
+
+    /**
+     * Wrap a document already opened with the {@link PdfiumCore} of this renderer, closing it closes the document
+     */
+    public Document wrap(PdfDocument pdfDocument) {
+        return new PdfiumDocument(pdfiumCore, pdfDocument);
+    }
+
+    private static class PdfiumDocument implements Document {
+
+        private final PdfiumCore pdfiumCore;
+
+        private final PdfDocument pdfDocument;
+
+        PdfiumDocument(PdfiumCore pdfiumCore, PdfDocument pdfDocument) {
+            this.pdfiumCore = pdfiumCore;
+            this.pdfDocument = pdfDocument;
+        }
+
+        @Override
+        public int getPageCount() {
+            return pdfiumCore.getPageCount(pdfDocument);
+        }
+
+        @Override
+        public Size getPageSize(int page) {
+            return pdfiumCore.getPageSize(pdfDocument, page);
+        }
+
+        @Override
+        public void openPage(int page) {
+            pdfiumCore.openPage(pdfDocument, page);
+        }
+
+        @Override
+        public void renderPage(Bitmap bitmap, int page, int startX, int startY, int width, int height,
+                               boolean annotationRendering) {
+            pdfiumCore.renderPageBitmap(pdfDocument, bitmap, page, startX, startY, width, height, annotationRendering);
+        }
+
+        @Override
+        public PdfDocument.Meta getMeta() {
+            return pdfiumCore.getDocumentMeta(pdfDocument);
+        }
+
+        @Override
+        public List<PdfDocument.Bookmark> getTableOfContents() {
+            return pdfiumCore.getTableOfContents(pdfDocument);
+        }
+
+        @Override
+        public void close() {
+            pdfiumCore.closeDocument(pdfDocument);
+        }
+    }
+}
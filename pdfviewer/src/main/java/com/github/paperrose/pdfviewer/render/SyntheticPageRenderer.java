@@ -0,0 +1,104 @@
+package com.github.paperrose.pdfviewer.render;
+
+import android.graphics.Bitmap;
+import android.os.ParcelFileDescriptor;
+
+import com.shockwave.pdfium.PdfDocument;
+import com.shockwave.pdfium.util.Size;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves {@link SyntheticPages} to the views, to measure the tiling, caching and scheduling without native code.
+ * <p>
+ * Every document opened has the same pages, whatever the data given. A null bitmap is accepted,
+ * so that no Android bitmap is needed when only the cost matters, the whole page is then counted as drawn.
+ */
+public class SyntheticPageRenderer implements PageRenderer {
+
+    private final SyntheticPages pages;
+
+    private final AtomicLong openedPageCount = new AtomicLong();
+
+    public SyntheticPageRenderer(SyntheticPages pages) {
+        this.pages = pages;
+    }
+
+    public SyntheticPages getPages() {
+        return pages;
+    }
+
+    /**
+     * @return number of pages opened by all the documents
+     */
+    public long getOpenedPageCount() {
+        return openedPageCount.get();
+    }
+
+    @Override
+    public Document open(ParcelFileDescriptor fd, String password) throws IOException {
+        fd.close();
+        return new SyntheticDocument();
+    }
+
+    @Override
+    public Document open(byte[] data, String password) {
+        return new SyntheticDocument();
+    }
+
+    private class SyntheticDocument implements Document {
+
+        /**
+         * Pixels of the last region, calls on a document are serialized
+         */
+        private int[] pixels = new int[0];
+
+        @Override
+        public int getPageCount() {
+            return pages.getPageCount();
+        }
+
+        @Override
+        public Size getPageSize(int page) {
+            return new Size(pages.getPageWidth(page), pages.getPageHeight(page));
+        }
+
+        @Override
+        public void openPage(int page) {
+            openedPageCount.incrementAndGet();
+        }
+
+        @Override
+        public void renderPage(Bitmap bitmap, int page, int startX, int startY, int width, int height,
+                               boolean annotationRendering) {
+            if (bitmap == null) {
+                pages.render(null, width, width, height, page, startX, startY, width, height);
+                return;
+            }
+            int regionWidth = bitmap.getWidth();
+            int regionHeight = bitmap.getHeight();
+            if (pixels.length < regionWidth * regionHeight) {
+                pixels = new int[regionWidth * regionHeight];
+            }
+            pages.render(pixels, regionWidth, regionWidth, regionHeight, page, startX, startY, width, height);
+            bitmap.setPixels(pixels, 0, regionWidth, 0, 0, regionWidth, regionHeight);
+        }
+
+        @Override
+        public PdfDocument.Meta getMeta() {
+            return null;
+        }
+
+        @Override
+        public List<PdfDocument.Bookmark> getTableOfContents() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.github.paperrose.pdfviewer.render;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deterministic pages drawn into plain ARGB pixel arrays, so the tiling, caching and scheduling can be
+ * measured on the JVM. {@link SyntheticPageRenderer} serves them to the views.
+ * <p>
+ * A page is white paper with lines of black text between margins. Every {@link #setColorEvery(int)}-th
+ * page also has a colour figure. Rendering a region spins until {@link #setRenderCostNanos(long)} plus
+ * {@link #setMegapixelCostNanos(long)} per million pixels have passed, drawing included.
+ */
+public class SyntheticPages {
+
+    private static final int PAPER = 0xFFFFFFFF;
+
+    private static final int INK = 0xFF000000;
+
+    private static final int FIGURE = 0xFF3366CC;
+
+    private final int pageCount;
+
+    private final int pageWidth;
+
+    private final int pageHeight;
+
+    private volatile int landscapeEvery;
+
+    private volatile int colorEvery;
+
+    private volatile long renderCostNanos;
+
+    private volatile long megapixelCostNanos;
+
+    private final AtomicLong renderCount = new AtomicLong();
+
+    public SyntheticPages(int pageCount, int pageWidth, int pageHeight) {
+        this.pageCount = pageCount;
+        this.pageWidth = pageWidth;
+        this.pageHeight = pageHeight;
+    }
+
+    /**
+     * Turn every n-th page to landscape, to lay out pages of mixed sizes. 0 to keep all the pages portrait.
+     */
+    public SyntheticPages setLandscapeEvery(int landscapeEvery) {
+        this.landscapeEvery = landscapeEvery;
+        return this;
+    }
+
+    /**
+     * Draw a colour figure on every n-th page. 0 to keep all the pages black and white.
+     */
+    public SyntheticPages setColorEvery(int colorEvery) {
+        this.colorEvery = colorEvery;
+        return this;
+    }
+
+    /**
+     * @param renderCostNanos time spent by every render call, whatever its size
+     */
+    public SyntheticPages setRenderCostNanos(long renderCostNanos) {
+        this.renderCostNanos = renderCostNanos;
+        return this;
+    }
+
+    /**
+     * @param megapixelCostNanos time spent by a render call per million pixels of the rendered region
+     */
+    public SyntheticPages setMegapixelCostNanos(long megapixelCostNanos) {
+        this.megapixelCostNanos = megapixelCostNanos;
+        return this;
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    private boolean isLandscape(int page) {
+        return landscapeEvery > 0 && page % landscapeEvery == landscapeEvery - 1;
+    }
+
+    public int getPageWidth(int page) {
+        return isLandscape(page) ? pageHeight : pageWidth;
+    }
+
+    public int getPageHeight(int page) {
+        return isLandscape(page) ? pageWidth : pageHeight;
+    }
+
+    /**
+     * @return number of regions rendered
+     */
+    public long getRenderCount() {
+        return renderCount.get();
+    }
+
+    /**
+     * @return time a render call of the given region spends
+     */
+    public long getCostNanos(int width, int height) {
+        return renderCostNanos + megapixelCostNanos * width * height / 1000000L;
+    }
+
+    /**
+     * Render a region of a page, with the arguments of {@link PageRenderer.Document#renderPage}
+     *
+     * @param pixels ARGB pixels of the region, row after row, or null to only spend the cost of the region
+     * @param stride number of pixels between two rows
+     */
+    public void render(int[] pixels, int stride, int regionWidth, int regionHeight, int page,
+                       int startX, int startY, int width, int height) {
+        long end = System.nanoTime() + getCostNanos(regionWidth, regionHeight);
+        if (pixels != null) {
+            draw(pixels, stride, regionWidth, regionHeight, page, startX, startY, width, height);
+        }
+        while (System.nanoTime() - end < 0) {
+            // Busy wait, as a renderer keeps its thread busy
+        }
+        renderCount.incrementAndGet();
+    }
+
+    private void draw(int[] pixels, int stride, int regionWidth, int regionHeight, int page,
+                      int startX, int startY, int width, int height) {
+        float scaleX = (float) getPageWidth(page) / width;
+        float scaleY = (float) getPageHeight(page) / height;
+        boolean figure = colorEvery > 0 && page % colorEvery == 0;
+        for (int y = 0; y < regionHeight; y++) {
+            int pageY = (int) ((y - startY) * scaleY);
+            int offset = y * stride;
+            for (int x = 0; x < regionWidth; x++) {
+                pixels[offset + x] = pixelAt(page, (int) ((x - startX) * scaleX), pageY, figure);
+            }
+        }
+    }
+
+    private int pixelAt(int page, int x, int y, boolean figure) {
+        int w = getPageWidth(page);
+        int h = getPageHeight(page);
+        int margin = w / 10;
+        if (x < margin || x >= w - margin || y < margin || y >= h - margin) {
+            return PAPER;
+        }
+        if (figure && y < h / 3 && x < w / 2) {
+            return FIGURE;
+        }
+        // Lines of 12 units with 8 units of glyphs, glyphs 5 units wide with 1 of spacing
+        int line = y % 12;
+        if (line >= 8) {
+            return PAPER;
+        }
+        int glyph = (x + page * 7 + y / 12 * 13) % 6;
+        return glyph < 5 && ((x * 31 + y * 17 + page) & 3) != 0 ? INK : PAPER;
+    }
+}
@@ -29,18 +29,66 @@ public interface Constants {
      */
     float PART_SIZE = 256;
 
+    /**
+     * Number of whole page preview levels, at 1/2, 1/4, 1/8... of the zoom level (default 3).
+     * The finest level that fits in PREVIEW_MAX_PIXELS is rendered before the parts.
+     */
+    int PREVIEW_LEVELS = 3;
+
+    /** The maximum number of pixels of a whole page preview */
+    int PREVIEW_MAX_PIXELS = 512 * 1024;
+
     /** The size of the grid of loaded images around the current point */
     int GRID_SIZE = 10;
 
     /** Number of preloaded rows or columns */
     int PRELOAD_COUNT = 7;
 
+    /**
+     * Number of page sizes read at once (default 256). The pages around the first shown page
+     * are read before showing it, the other ones in the background.
+     */
+    int PAGE_SIZES_BATCH = 256;
+
+    /** Number of pages opened at idle on each side of the current page (default 2) */
+    int WARM_UP_PAGES = 2;
+
+    /** Minimum milliseconds between two render metrics notifications (default 1000) */
+    int RENDER_METRICS_INTERVAL = 1000;
+
+    /** Weight of the distance to the view center for parts ahead of the scroll direction */
+    float AHEAD_PRIORITY_WEIGHT = 0.5f;
+
+    /** Weight of the distance to the view center for parts behind the scroll direction */
+    float BEHIND_PRIORITY_WEIGHT = 1.5f;
+
+    /** Fling speed, in views per second, above which only the landing view is loaded (default 3) */
+    float FLING_FAST_VIEWS_PER_SECOND = 3;
+
     interface Cache {
 
-        /** The size of the cache (number of bitmaps kept) */
+        /** The maximum number of parts loaded around the current point */
         int CACHE_SIZE = (int) Math.pow(GRID_SIZE, 2d);
 
+        /** Part of the memory class of the device used by default for cached bitmaps */
+        float MEMORY_CLASS_FRACTION = 0.25f;
+
         int THUMBNAILS_CACHE_SIZE = 6;
+
+        /** The maximum number of bytes kept by the bitmap pool for reuse */
+        int BITMAP_POOL_SIZE = 8 * 1024 * 1024;
+
+        /** The default maximum number of bytes of the evicted parts kept compressed */
+        long COMPRESSED_CACHE_SIZE = 8 * 1024 * 1024;
+
+        /** The maximum number of bytes of the documents kept open while no view shows them */
+        long DOCUMENT_REGISTRY_SIZE = 32 * 1024 * 1024;
+
+        /** Estimated native memory of an opened page, pdfium doesn't report it */
+        long PAGE_HANDLE_SIZE = 512 * 1024;
+
+        /** The default estimated native memory of the opened pages of a document, 64 pages */
+        long PAGE_HANDLES_SIZE = 64 * PAGE_HANDLE_SIZE;
     }
 
     interface Pinch {
@@ -0,0 +1,313 @@
+package com.github.paperrose.pdfviewer.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Encrypted document container that can be decrypted in chunks, or read at any position.
+ * <p>
+ * The content is encrypted with AES in counter mode, so any 16 bytes block can be decrypted on its own
+ * and the container is exactly {@link #HEADER_SIZE} bytes longer than the document. The key is derived
+ * from the password with PBKDF2, a verifier derived with it rejects a wrong password before decrypting.
+ * <p>
+ * Header: magic "PDFC", version, chunk size, PBKDF2 iterations, salt, nonce, password verifier.
+ * The chunk size only bounds the memory used while streaming, it does not change the encrypted bytes.
+ */
+public class CryptContainer {
+
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    private static final byte[] MAGIC = {'P', 'D', 'F', 'C'};
+
+    private static final int VERSION = 1;
+
+    private static final int BLOCK_SIZE = 16;
+
+    private static final int SALT_SIZE = 16;
+
+    private static final int NONCE_SIZE = 16;
+
+    private static final int VERIFIER_SIZE = 16;
+
+    private static final int ITERATIONS = 10000;
+
+    public static final int HEADER_SIZE = MAGIC.length + 1 + 4 + 4 + SALT_SIZE + NONCE_SIZE + VERIFIER_SIZE;
+
+    private CryptContainer() {
+        // Prevents instantiation
+    }
+
+    /**
+     * @return true if the data starts with a container header
+     */
+    public static boolean isContainer(byte[] data) {
+        if (data.length < HEADER_SIZE) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static byte[] encrypt(byte[] message, String password) throws IOException, GeneralSecurityException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(HEADER_SIZE + message.length);
+        encrypt(new ByteArrayInputStream(message), output, password, DEFAULT_CHUNK_SIZE);
+        return output.toByteArray();
+    }
+
+    /**
+     * Encrypt a stream, holding one chunk in memory at a time
+     */
+    public static void encrypt(InputStream input, OutputStream output, String password, int chunkSize)
+            throws IOException, GeneralSecurityException {
+        if (chunkSize <= 0 || chunkSize % BLOCK_SIZE != 0) {
+            throw new IllegalArgumentException("Chunk size must be a multiple of " + BLOCK_SIZE);
+        }
+        SecureRandom random = new SecureRandom();
+        Header header = new Header(chunkSize, ITERATIONS, new byte[SALT_SIZE], new byte[NONCE_SIZE]);
+        random.nextBytes(header.salt);
+        random.nextBytes(header.nonce);
+        Keys keys = deriveKeys(password, header);
+        header.verifier = keys.verifier;
+        header.write(output);
+
+        Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+        transform(cipher, Cipher.ENCRYPT_MODE, keys, header, input, output);
+    }
+
+    /**
+     * Decrypt a stream, holding one chunk in memory at a time
+     *
+     * @throws GeneralSecurityException if the password is wrong
+     */
+    public static void decrypt(InputStream input, OutputStream output, String password)
+            throws IOException, GeneralSecurityException {
+        Header header = Header.read(input);
+        Keys keys = checkedKeys(password, header);
+        Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+        transform(cipher, Cipher.DECRYPT_MODE, keys, header, input, output);
+    }
+
+    /**
+     * Open a container file for random access reads
+     *
+     * @throws GeneralSecurityException if the password is wrong
+     */
+    public static Reader open(RandomAccessFile file, String password) throws IOException, GeneralSecurityException {
+        file.seek(0);
+        byte[] bytes = new byte[HEADER_SIZE];
+        file.readFully(bytes);
+        Header header = Header.read(new ByteArrayInputStream(bytes));
+        return new Reader(file, header, checkedKeys(password, header));
+    }
+
+    private static void transform(Cipher cipher, int mode, Keys keys, Header header,
+                                  InputStream input, OutputStream output) throws IOException, GeneralSecurityException {
+        byte[] buffer = new byte[header.chunkSize];
+        long block = 0;
+        int read;
+        while ((read = readChunk(input, buffer)) > 0) {
+            cipher.init(mode, keys.key, counter(header.nonce, block));
+            int length = cipher.doFinal(buffer, 0, read, buffer, 0);
+            output.write(buffer, 0, length);
+            block += header.chunkSize / BLOCK_SIZE;
+        }
+    }
+
+    private static int readChunk(InputStream input, byte[] buffer) throws IOException {
+        int total = 0;
+        int read;
+        while (total < buffer.length && (read = input.read(buffer, total, buffer.length - total)) != -1) {
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Counter block of the given block index, the nonce being the counter of the first block
+     */
+    private static IvParameterSpec counter(byte[] nonce, long block) {
+        byte[] iv = Arrays.copyOf(nonce, nonce.length);
+        long carry = block;
+        for (int i = iv.length - 1; i >= 0 && carry != 0; i--) {
+            long sum = (iv[i] & 0xFF) + (carry & 0xFF);
+            iv[i] = (byte) sum;
+            carry = (carry >>> 8) + (sum >>> 8);
+        }
+        return new IvParameterSpec(iv);
+    }
+
+    private static Keys checkedKeys(String password, Header header) throws GeneralSecurityException {
+        Keys keys = deriveKeys(password, header);
+        if (!MessageDigest.isEqual(keys.verifier, header.verifier)) {
+            throw new GeneralSecurityException("Wrong password");
+        }
+        return keys;
+    }
+
+    private static Keys deriveKeys(String password, Header header) throws GeneralSecurityException {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), header.salt, header.iterations, (16 + VERIFIER_SIZE) * 8);
+        byte[] derived = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1").generateSecret(spec).getEncoded();
+        spec.clearPassword();
+        Keys keys = new Keys(new SecretKeySpec(derived, 0, 16, "AES"), Arrays.copyOfRange(derived, 16, 16 + VERIFIER_SIZE));
+        Arrays.fill(derived, (byte) 0);
+        return keys;
+    }
+
+    /**
+     * Reads the decrypted document at any position, decrypting only the blocks covering the read.
+     * Not thread safe.
+     */
+    public static class Reader {
+
+        private final RandomAccessFile file;
+
+        private final Header header;
+
+        private final Keys keys;
+
+        private final Cipher cipher;
+
+        private final byte[] buffer;
+
+        private Reader(RandomAccessFile file, Header header, Keys keys) throws GeneralSecurityException {
+            this.file = file;
+            this.header = header;
+            this.keys = keys;
+            this.cipher = Cipher.getInstance("AES/CTR/NoPadding");
+            this.buffer = new byte[header.chunkSize];
+        }
+
+        /**
+         * @return length of the decrypted document
+         */
+        public long length() throws IOException {
+            return file.length() - HEADER_SIZE;
+        }
+
+        /**
+         * Read decrypted bytes at the given position of the document
+         *
+         * @return number of bytes read, or -1 at the end of the document
+         */
+        public int read(long position, byte[] bytes, int offset, int length) throws IOException, GeneralSecurityException {
+            long remaining = length() - position;
+            if (remaining <= 0) {
+                return -1;
+            }
+            length = (int) Math.min(length, remaining);
+            int done = 0;
+            while (done < length) {
+                long current = position + done;
+                int skip = (int) (current % BLOCK_SIZE);
+                int count = Math.min(length - done, buffer.length - skip);
+                file.seek(HEADER_SIZE + current - skip);
+                file.readFully(buffer, 0, skip + count);
+                cipher.init(Cipher.DECRYPT_MODE, keys.key, counter(header.nonce, current / BLOCK_SIZE));
+                cipher.doFinal(buffer, 0, skip + count, buffer, 0);
+                System.arraycopy(buffer, skip, bytes, offset + done, count);
+                done += count;
+            }
+            return length;
+        }
+    }
+
+    private static class Keys {
+
+        final SecretKeySpec key;
+
+        final byte[] verifier;
+
+        Keys(SecretKeySpec key, byte[] verifier) {
+            this.key = key;
+            this.verifier = verifier;
+        }
+    }
+
+    private static class Header {
+
+        final int chunkSize;
+
+        final int iterations;
+
+        final byte[] salt;
+
+        final byte[] nonce;
+
+        byte[] verifier;
+
+        Header(int chunkSize, int iterations, byte[] salt, byte[] nonce) {
+            this.chunkSize = chunkSize;
+            this.iterations = iterations;
+            this.salt = salt;
+            this.nonce = nonce;
+        }
+
+        void write(OutputStream output) throws IOException {
+            output.write(MAGIC);
+            output.write(VERSION);
+            writeInt(output, chunkSize);
+            writeInt(output, iterations);
+            output.write(salt);
+            output.write(nonce);
+            output.write(verifier);
+        }
+
+        static Header read(InputStream input) throws IOException {
+            byte[] magic = readFully(input, MAGIC.length);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not an encrypted container");
+            }
+            int version = input.read();
+            if (version != VERSION) {
+                throw new IOException("Unsupported container version " + version);
+            }
+            int chunkSize = readInt(input);
+            int iterations = readInt(input);
+            if (chunkSize <= 0 || chunkSize % BLOCK_SIZE != 0 || iterations <= 0) {
+                throw new IOException("Invalid container header");
+            }
+            Header header = new Header(chunkSize, iterations, readFully(input, SALT_SIZE), readFully(input, NONCE_SIZE));
+            header.verifier = readFully(input, VERIFIER_SIZE);
+            return header;
+        }
+
+        private static void writeInt(OutputStream output, int value) throws IOException {
+            output.write(value >>> 24);
+            output.write(value >>> 16);
+            output.write(value >>> 8);
+            output.write(value);
+        }
+
+        private static int readInt(InputStream input) throws IOException {
+            byte[] bytes = readFully(input, 4);
+            return ((bytes[0] & 0xFF) << 24) | ((bytes[1] & 0xFF) << 16) | ((bytes[2] & 0xFF) << 8) | (bytes[3] & 0xFF);
+        }
+
+        private static byte[] readFully(InputStream input, int length) throws IOException {
+            byte[] bytes = new byte[length];
+            if (readChunk(input, bytes) != length) {
+                throw new EOFException("Truncated container header");
+            }
+            return bytes;
+        }
+    }
+}
@@ -1,9 +1,23 @@
 package com.github.paperrose.pdfviewer.util;
 
-import android.text.TextUtils;
-
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
@@ -12,8 +26,36 @@ import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.SecretKeySpec;
 
 public class CryptLab {
+
+    /**
+     * Bytes decrypted at once by the streaming decryption
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final int BLOCK_SIZE = 16;
+
+    /**
+     * Smallest number of bytes decrypted by one thread of the parallel decryption
+     */
+    private static final int MIN_SLICE_SIZE = 256 * 1024;
+
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+
+    private static final ThreadLocal<Cipher> BLOCK_CIPHER = new ThreadLocal<Cipher>() {
+        @Override
+        protected Cipher initialValue() {
+            try {
+                return Cipher.getInstance("AES/ECB/NoPadding");
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    private static ThreadPoolExecutor decryptExecutor;
+
     private static String getPassphraseSize16(String key) {
-        if (TextUtils.isEmpty(key)) {
+        if (key == null || key.isEmpty()) {
             return null;
         }
         char controlChar = '\u0014';
@@ -53,4 +95,124 @@ public class CryptLab {
 
         return decodedText;
     }
+
+    /**
+     * Same as {@link #decodeAES(byte[], String)}, but on all the cores. Blocks are not chained,
+     * so the message is split in slices decrypted in parallel into one output array.
+     * The last block is decrypted first to remove the padding and size the output exactly.
+     */
+    public static byte[] decodeAESParallel(byte[] encodedMessage, String key) throws GeneralSecurityException {
+        int slices = Math.min(CPU_COUNT, encodedMessage.length / MIN_SLICE_SIZE);
+        if (slices <= 1) {
+            return decodeAES(encodedMessage, key);
+        }
+        if (encodedMessage.length % BLOCK_SIZE != 0) {
+            throw new IllegalBlockSizeException("Input length not multiple of " + BLOCK_SIZE + " bytes");
+        }
+        String passphrase16 = getPassphraseSize16(key);
+        final SecretKeySpec secretKey = new SecretKeySpec(passphrase16.getBytes(), "AES");
+
+        Cipher lastBlockCipher = Cipher.getInstance("AES");
+        lastBlockCipher.init(Cipher.DECRYPT_MODE, secretKey);
+        final int bodyLength = encodedMessage.length - BLOCK_SIZE;
+        byte[] lastBlock = lastBlockCipher.doFinal(encodedMessage, bodyLength, BLOCK_SIZE);
+        final byte[] output = new byte[bodyLength + lastBlock.length];
+        System.arraycopy(lastBlock, 0, output, bodyLength, lastBlock.length);
+
+        final byte[] input = encodedMessage;
+        final int sliceSize = (bodyLength / slices + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+        List<Future<?>> futures = new ArrayList<>(slices);
+        ThreadPoolExecutor executor = getDecryptExecutor();
+        for (int offset = sliceSize; offset < bodyLength; offset += sliceSize) {
+            final int sliceOffset = offset;
+            final int sliceLength = Math.min(sliceSize, bodyLength - offset);
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws GeneralSecurityException {
+                    decodeSlice(input, sliceOffset, sliceLength, output, secretKey);
+                    return null;
+                }
+            }));
+        }
+        // The calling thread takes the first slice
+        decodeSlice(input, 0, Math.min(sliceSize, bodyLength), output, secretKey);
+
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new GeneralSecurityException("Decryption interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof GeneralSecurityException) {
+                throw (GeneralSecurityException) e.getCause();
+            }
+            throw new GeneralSecurityException(e.getCause());
+        }
+        return output;
+    }
+
+    private static void decodeSlice(byte[] input, int offset, int length, byte[] output, SecretKeySpec secretKey)
+            throws GeneralSecurityException {
+        Cipher cipher = BLOCK_CIPHER.get();
+        cipher.init(Cipher.DECRYPT_MODE, secretKey);
+        cipher.doFinal(input, offset, length, output, offset);
+    }
+
+    private static synchronized ThreadPoolExecutor getDecryptExecutor() {
+        if (decryptExecutor == null) {
+            decryptExecutor = new ThreadPoolExecutor(CPU_COUNT, CPU_COUNT, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger(1);
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "CryptLab #" + count.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            decryptExecutor.allowCoreThreadTimeOut(true);
+        }
+        return decryptExecutor;
+    }
+
+    /**
+     * Decrypt into a stream, one chunk at a time, so the plain text is never held in memory.
+     * Accepts both {@link CryptContainer} data and the data of {@link #encodeAES(byte[], String)}.
+     */
+    public static void decodeAES(byte[] encodedMessage, String key, OutputStream output) throws IOException,
+            GeneralSecurityException {
+        if (CryptContainer.isContainer(encodedMessage)) {
+            CryptContainer.decrypt(new ByteArrayInputStream(encodedMessage), output, key);
+            return;
+        }
+        String passphrase16 = getPassphraseSize16(key);
+        SecretKeySpec secretKey = new SecretKeySpec(passphrase16.getBytes(), "AES");
+        Cipher cipher = Cipher.getInstance("AES");
+        cipher.init(Cipher.DECRYPT_MODE, secretKey);
+        byte[] buffer = new byte[CHUNK_SIZE + cipher.getBlockSize()];
+        for (int offset = 0; offset < encodedMessage.length; offset += CHUNK_SIZE) {
+            int length = Math.min(CHUNK_SIZE, encodedMessage.length - offset);
+            output.write(buffer, 0, cipher.update(encodedMessage, offset, length, buffer, 0));
+        }
+        output.write(buffer, 0, cipher.doFinal(buffer, 0));
+    }
+
+    /**
+     * Decrypt into the given file, see {@link #decodeAES(byte[], String, OutputStream)}
+     */
+    public static void decodeAES(byte[] encodedMessage, String key, File output) throws IOException,
+            GeneralSecurityException {
+        OutputStream outputStream = new FileOutputStream(output);
+        try {
+            decodeAES(encodedMessage, key, outputStream);
+        } finally {
+            outputStream.close();
+        }
+    }
 }
\ No newline at end of file
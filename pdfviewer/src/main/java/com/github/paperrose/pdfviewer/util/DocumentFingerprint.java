@@ -0,0 +1,67 @@
+package com.github.paperrose.pdfviewer.util;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Identifies a document across views and sessions, to share its opened handle and key its persisted tiles.
+ * Byte arrays are hashed entirely, files are identified by their path, length and modification time.
+ */
+public class DocumentFingerprint {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private DocumentFingerprint() {
+        // Prevents instantiation
+    }
+
+    public static String of(byte[] bytes) {
+        MessageDigest digest = newDigest();
+        update(digest, bytes.length);
+        digest.update(bytes);
+        return toHex(digest.digest());
+    }
+
+    public static String of(File file) {
+        MessageDigest digest = newDigest();
+        update(digest, file.length());
+        update(digest, file.lastModified());
+        digest.update(file.getAbsolutePath().getBytes(UTF_8));
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Fingerprint of a document that can't be read twice, from its location and length
+     */
+    public static String of(String uri, long length) {
+        MessageDigest digest = newDigest();
+        update(digest, length);
+        digest.update(uri.getBytes(UTF_8));
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            digest.update((byte) (value >>> shift));
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+            builder.append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+}
@@ -16,26 +16,129 @@
 package com.github.paperrose.pdfviewer.util;
 
 import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 
 public class FileUtils {
 
+    /**
+     * Bytes copied per channel transfer
+     */
+    private static final long TRANSFER_SIZE = 8 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static long packageUpdateTime = -1;
+
     private FileUtils() {
         // Prevents instantiation
     }
 
+    /**
+     * Copy an asset to the cache directory so pdfium can open it, unless a complete copy
+     * made since the last app update is already there. Uncompressed assets are copied by the
+     * kernel straight from the APK, the copy is written to a temporary file first so an
+     * interrupted copy is never used.
+     */
     public static File fileFromAsset(Context context, String assetName) throws IOException {
         File outFile = new File(context.getCacheDir(), assetName + "-pdfview.pdf");
         if (assetName.contains("/")) {
             outFile.getParentFile().mkdirs();
         }
-        copy(context.getAssets().open(assetName), outFile);
-        return outFile;
+        AssetManager assets = context.getAssets();
+        AssetFileDescriptor descriptor = openUncompressed(assets, assetName);
+        InputStream inputStream = null;
+        try {
+            long length;
+            if (descriptor != null) {
+                length = descriptor.getLength();
+            } else {
+                inputStream = assets.open(assetName);
+                length = inputStream.available();
+            }
+            if (outFile.length() == length && outFile.lastModified() >= getPackageUpdateTime(context)) {
+                return outFile;
+            }
+
+            File tmpFile = new File(outFile.getPath() + ".tmp");
+            if (descriptor != null) {
+                transfer(descriptor, tmpFile);
+            } else {
+                copy(inputStream, tmpFile);
+                inputStream = null;
+            }
+            if (!tmpFile.renameTo(outFile)) {
+                tmpFile.delete();
+                throw new IOException("Cannot rename " + tmpFile + " to " + outFile);
+            }
+            return outFile;
+        } finally {
+            if (descriptor != null) {
+                descriptor.close();
+            }
+            if (inputStream != null) {
+                inputStream.close();
+            }
+        }
+    }
+
+    /**
+     * @return the descriptor of the asset inside the APK, or null if the asset is compressed
+     */
+    private static AssetFileDescriptor openUncompressed(AssetManager assets, String assetName) {
+        try {
+            return assets.openFd(assetName);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void transfer(AssetFileDescriptor descriptor, File output) throws IOException {
+        FileInputStream inputStream = null;
+        FileOutputStream outputStream = null;
+        try {
+            inputStream = new FileInputStream(descriptor.getFileDescriptor());
+            outputStream = new FileOutputStream(output);
+            FileChannel in = inputStream.getChannel();
+            FileChannel out = outputStream.getChannel();
+            long start = descriptor.getStartOffset();
+            long length = descriptor.getLength();
+            long position = 0;
+            while (position < length) {
+                long transferred = in.transferTo(start + position, Math.min(TRANSFER_SIZE, length - position), out);
+                if (transferred <= 0) {
+                    throw new IOException("Unexpected end of asset after " + position + " bytes");
+                }
+                position += transferred;
+            }
+        } finally {
+            // The descriptor owns the file descriptor, only the output is closed
+            if (outputStream != null) {
+                outputStream.close();
+            }
+        }
+    }
+
+    private static synchronized long getPackageUpdateTime(Context context) {
+        if (packageUpdateTime < 0) {
+            try {
+                packageUpdateTime = context.getPackageManager()
+                        .getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+            } catch (PackageManager.NameNotFoundException e) {
+                // Never trust a copy
+                return Long.MAX_VALUE;
+            }
+        }
+        return packageUpdateTime;
     }
 
     public static void copy(InputStream inputStream, File output) throws IOException {
@@ -43,7 +146,7 @@ public class FileUtils {
         try {
             outputStream = new FileOutputStream(output);
             int read = 0;
-            byte[] bytes = new byte[1024];
+            byte[] bytes = new byte[BUFFER_SIZE];
             while ((read = inputStream.read(bytes)) != -1) {
                 outputStream.write(bytes, 0, read);
             }
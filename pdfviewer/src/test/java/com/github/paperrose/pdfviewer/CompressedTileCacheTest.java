@@ -0,0 +1,123 @@
+package com.github.paperrose.pdfviewer;
+
+import android.graphics.Bitmap;
+import android.graphics.RectF;
+
+import com.github.paperrose.pdfviewer.model.PagePart;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Keeps ARGB_8888 parts deflated and inflates them back, waiting for the compression thread
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class CompressedTileCacheTest {
+
+    private static final int SIZE = 32;
+
+    private static final float PAGE_WIDTH = 612;
+
+    private static final float PAGE_HEIGHT = 792;
+
+    private static final RectF BOUNDS = new RectF(0, 0, 0.5f, 0.5f);
+
+    private static final long COMPRESSION_TIMEOUT_MILLIS = 5000;
+
+    private final CompressedTileCache cache = new CompressedTileCache(Long.MAX_VALUE, new RenderMetrics());
+
+    /**
+     * Recycles what it is given, so an inflated bitmap is never the one put in the cache
+     */
+    private final BitmapPool bitmapPool = new BitmapPool(0);
+
+    private final CompressedTileCache.Decoder decoder = new CompressedTileCache.Decoder();
+
+    @After
+    public void tearDown() {
+        decoder.end();
+    }
+
+    @Test
+    public void inflatesWhatWasPut() throws Exception {
+        int[] pixels = pixels(1);
+        putAndWait(0, pixels);
+
+        Bitmap bitmap = get(0);
+        assertNotNull(bitmap);
+        int[] inflated = new int[SIZE * SIZE];
+        bitmap.getPixels(inflated, 0, SIZE, 0, 0, SIZE, SIZE);
+        assertArrayEquals(pixels, inflated);
+        // Other bounds of the same page are not kept
+        assertNull(cache.get(0, 0, PAGE_WIDTH, PAGE_HEIGHT, new RectF(0.5f, 0, 1, 0.5f), bitmapPool, decoder));
+    }
+
+    @Test
+    public void clearDropsPartsBeingCompressed() throws Exception {
+        cache.put(part(0, pixels(1)), bitmapPool);
+        cache.clear();
+        // The compression thread runs the parts in order, the first one is done once the second is kept
+        putAndWait(1, pixels(2));
+
+        assertNull(get(0));
+        assertNotNull(get(1));
+    }
+
+    @Test
+    public void trimsTheLeastRecentlyUsedParts() throws Exception {
+        putAndWait(0, pixels(1));
+        putAndWait(1, pixels(2));
+        putAndWait(2, pixels(3));
+        assertNotNull(get(0));
+
+        cache.setMaxBytes(cache.getSizeBytes() - 1);
+
+        assertTrue(cache.getSizeBytes() <= cache.getMaxBytes());
+        assertNotNull(get(0));
+        assertNull(get(1));
+        assertNotNull(get(2));
+    }
+
+    private void putAndWait(int userPage, int[] pixels) throws InterruptedException {
+        long sizeBefore = cache.getSizeBytes();
+        cache.put(part(userPage, pixels), bitmapPool);
+        long deadline = System.currentTimeMillis() + COMPRESSION_TIMEOUT_MILLIS;
+        while (cache.getSizeBytes() == sizeBefore) {
+            assertTrue("Part not compressed in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private Bitmap get(int userPage) {
+        return cache.get(userPage, userPage, PAGE_WIDTH, PAGE_HEIGHT, BOUNDS, bitmapPool, decoder);
+    }
+
+    private static PagePart part(int userPage, int[] pixels) {
+        Bitmap bitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        bitmap.setPixels(pixels, 0, SIZE, 0, 0, SIZE, SIZE);
+        return new PagePart(userPage, userPage, bitmap, PAGE_WIDTH, PAGE_HEIGHT, new RectF(BOUNDS), false, 0);
+    }
+
+    /**
+     * Opaque noise, which deflates to about the same size whatever the seed
+     */
+    private static int[] pixels(long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[SIZE * SIZE];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        return pixels;
+    }
+}
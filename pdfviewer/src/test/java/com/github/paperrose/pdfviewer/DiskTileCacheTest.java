@@ -0,0 +1,144 @@
+package com.github.paperrose.pdfviewer;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.RectF;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays the journal of ARGB_8888 tiles written by a previous process
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class DiskTileCacheTest {
+
+    private static final int SIZE = 32;
+
+    private static final float PAGE_WIDTH = 612;
+
+    private static final float PAGE_HEIGHT = 792;
+
+    private static final RectF BOUNDS = new RectF(0, 0, 0.5f, 0.5f);
+
+    private static final long WRITE_TIMEOUT_MILLIS = 5000;
+
+    private final BitmapPool bitmapPool = new BitmapPool(0);
+
+    private DiskTileCache cache;
+
+    private File directory;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        // Shared by the process, it may have been used by another test
+        cache = DiskTileCache.open(context, Long.MAX_VALUE);
+        cache.clear();
+        directory = new File(context.getCacheDir(), "pdfviewer-tiles");
+    }
+
+    @After
+    public void tearDown() {
+        cache.clear();
+    }
+
+    @Test
+    public void replaysJournalWithInterruptedLastLine() throws Exception {
+        putAndWait(0);
+        putAndWait(1);
+        // Page 0 becomes the most recently used
+        assertNotNull(get(0));
+        long size = cache.getSizeBytes();
+
+        // The files left by a process killed while recording a third tile
+        Map<String, byte[]> files = new HashMap<>();
+        for (File file : directory.listFiles()) {
+            files.put(file.getName(), read(file));
+        }
+        cache.clear();
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            write(new File(directory, file.getKey()), file.getValue(), false);
+        }
+        String interrupted = key(2);
+        write(new File(directory, interrupted + ".tile"), files.get(key(0) + ".tile"), false);
+        write(new File(directory, "journal"), ("CLEAN " + interrupted).getBytes("UTF-8"), true);
+
+        assertNull(get(2));
+        assertFalse("Tile unknown to the journal kept", new File(directory, interrupted + ".tile").exists());
+        assertEquals(size, cache.getSizeBytes());
+
+        // The least recently used order is restored
+        cache.setMaxBytes(size - 1);
+        assertTrue(cache.getSizeBytes() < size);
+        assertNotNull(get(0));
+        assertNull(get(1));
+    }
+
+    private void putAndWait(int page) throws InterruptedException {
+        long sizeBefore = cache.getSizeBytes();
+        Bitmap bitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(0xFF000000 | page * 0x10101);
+        cache.put(key(page), page, PAGE_WIDTH, PAGE_HEIGHT, BOUNDS, bitmap);
+        long deadline = System.currentTimeMillis() + WRITE_TIMEOUT_MILLIS;
+        while (cache.getSizeBytes() == sizeBefore) {
+            assertTrue("Tile not written in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private Bitmap get(int page) {
+        return cache.get(key(page), page, PAGE_WIDTH, PAGE_HEIGHT, BOUNDS, bitmapPool);
+    }
+
+    private static String key(int page) {
+        return DiskTileCache.keyOf("test", page, PAGE_WIDTH, PAGE_HEIGHT, BOUNDS, false, false);
+    }
+
+    private static byte[] read(File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                bytes.write(buffer, 0, count);
+            }
+            return bytes.toByteArray();
+        } finally {
+            input.close();
+        }
+    }
+
+    private static void write(File file, byte[] bytes, boolean append) throws IOException {
+        OutputStream output = new FileOutputStream(file, append);
+        try {
+            output.write(bytes);
+        } finally {
+            output.close();
+        }
+    }
+}
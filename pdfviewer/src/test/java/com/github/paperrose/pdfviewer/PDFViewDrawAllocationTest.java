@@ -0,0 +1,146 @@
+package com.github.paperrose.pdfviewer;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Looper;
+import android.view.View;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.github.paperrose.pdfviewer.render.SyntheticPageRenderer;
+import com.github.paperrose.pdfviewer.render.SyntheticPages;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Draws a rendered viewport many times and checks onDraw() allocates nothing on the UI thread
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class PDFViewDrawAllocationTest {
+
+    private static final int WIDTH = 1080;
+
+    private static final int HEIGHT = 1920;
+
+    private static final int FRAMES = 1000;
+
+    private static final long RENDER_TIMEOUT_MILLIS = 10000;
+
+    private PDFView pdfView;
+
+    @Before
+    public void setUp() throws Exception {
+        pdfView = new PDFView(ApplicationProvider.getApplicationContext(), null);
+        pdfView.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        pdfView.layout(0, 0, WIDTH, HEIGHT);
+        pdfView.setRenderMetricsEnabled(true);
+
+        // The shadow bitmaps copy four bytes per pixel to and from buffers whatever their config,
+        // which the ALPHA_8 grayscale tiles and the compressed RGB_565 tiles don't fit
+        pdfView.fromBytes(new byte[1], null)
+                .pageRenderer(new SyntheticPageRenderer(new SyntheticPages(8, 612, 792).setColorEvery(2)))
+                .grayscaleTiles(false)
+                .compressedCacheMaxBytes(0)
+                .load();
+
+        long deadline = System.currentTimeMillis() + RENDER_TIMEOUT_MILLIS;
+        while (!pdfView.renderMetrics.isViewportCovered()) {
+            assertTrue("Viewport not rendered in time", System.currentTimeMillis() < deadline);
+            shadowOf(Looper.getMainLooper()).idle();
+            Thread.sleep(10);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        pdfView.recycle();
+    }
+
+    @Test
+    public void onDrawAllocatesNothing() throws Exception {
+        CountingCanvas canvas = new CountingCanvas();
+        ThreadAllocations allocations = new ThreadAllocations();
+
+        // Warms up the draw lists, the interpreter and the counter itself
+        for (int i = 0; i < FRAMES; i++) {
+            pdfView.onDraw(canvas);
+            allocations.get();
+        }
+        canvas.drawCount = 0;
+
+        long before = allocations.get();
+        for (int i = 0; i < FRAMES; i++) {
+            pdfView.onDraw(canvas);
+        }
+        long allocated = allocations.get() - before;
+
+        assertTrue("Nothing drawn", canvas.drawCount >= FRAMES);
+        // Reading the counter boxes its result, a per frame allocation would exceed a byte per frame
+        assertTrue("onDraw() allocated " + allocated + " bytes in " + FRAMES + " frames", allocated < FRAMES);
+    }
+
+    /**
+     * Canvas drawing nothing, so only the view code is measured
+     */
+    private static class CountingCanvas extends Canvas {
+
+        int drawCount;
+
+        @Override
+        public void drawColor(int color) {
+        }
+
+        @Override
+        public void drawRect(RectF rect, Paint paint) {
+            drawCount++;
+        }
+
+        @Override
+        public void drawBitmap(Bitmap bitmap, Rect src, RectF dst, Paint paint) {
+            drawCount++;
+        }
+
+        @Override
+        public void translate(float dx, float dy) {
+        }
+    }
+
+    /**
+     * Bytes allocated by the current thread. java.lang.management is not part of the Android
+     * classpath the tests compile against, the HotSpot bean is reached through reflection.
+     */
+    private static class ThreadAllocations {
+
+        private final Object threadBean;
+
+        private final Method allocatedBytes;
+
+        private final Object[] threadId = {Thread.currentThread().getId()};
+
+        ThreadAllocations() throws Exception {
+            threadBean = Class.forName("java.lang.management.ManagementFactory")
+                    .getMethod("getThreadMXBean").invoke(null);
+            allocatedBytes = Class.forName("com.sun.management.ThreadMXBean")
+                    .getMethod("getThreadAllocatedBytes", long.class);
+        }
+
+        long get() throws Exception {
+            return (Long) allocatedBytes.invoke(threadBean, threadId);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.github.paperrose.pdfviewer;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Classifies ARGB_8888 tiles, as the rendering workers do before storing them
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class TileClassifierTest {
+
+    private static final int SIZE = 16;
+
+    private final TileClassifier.Buffers buffers = new TileClassifier.Buffers();
+
+    @Test
+    public void grayTileIsGray() {
+        Bitmap tile = tile(Color.WHITE);
+        tile.setPixel(3, 5, Color.BLACK);
+        tile.setPixel(4, 5, Color.rgb(128, 128, 128));
+
+        assertEquals(TileClassifier.GRAY, new TileClassifier(true).classify(tile, 0, buffers));
+        // The ink coverage, the complement of the luminance
+        byte[] pixels = buffers.pixels(SIZE * SIZE).array();
+        assertEquals(0, pixels[0] & 0xFF);
+        assertEquals(255, pixels[5 * SIZE + 3] & 0xFF);
+        assertEquals(127, pixels[5 * SIZE + 4] & 0xFF);
+    }
+
+    @Test
+    public void colorTileIsColor() {
+        Bitmap tile = tile(Color.WHITE);
+        tile.setPixel(7, 7, Color.RED);
+
+        assertEquals(TileClassifier.COLOR, new TileClassifier(true).classify(tile, 0, buffers));
+    }
+
+    @Test
+    public void grayTileIsColorWhenGrayscaleIsDisabled() {
+        Bitmap tile = tile(Color.WHITE);
+        tile.setPixel(7, 7, Color.BLACK);
+
+        assertEquals(TileClassifier.COLOR, new TileClassifier(false).classify(tile, 0, buffers));
+    }
+
+    @Test
+    public void singleColorTileIsSolid() {
+        int paper = Color.rgb(250, 248, 240);
+
+        assertEquals(TileClassifier.SOLID, new TileClassifier(true).classify(tile(paper), 0, buffers));
+        assertEquals(paper, buffers.getSolidColor());
+    }
+
+    @Test
+    public void singleColorTileIsSolidWithoutGrayscale() {
+        assertEquals(TileClassifier.SOLID, new TileClassifier(false).classify(tile(Color.RED), 0, buffers));
+        assertEquals(Color.RED, buffers.getSolidColor());
+    }
+
+    @Test
+    public void singleColorTileIsSolidOnPageWithColor() {
+        TileClassifier classifier = new TileClassifier(true);
+        Bitmap color = tile(Color.WHITE);
+        color.setPixel(0, 0, Color.BLUE);
+
+        assertEquals(TileClassifier.COLOR, classifier.classify(color, 0, buffers));
+        assertEquals(TileClassifier.SOLID, classifier.classify(tile(Color.WHITE), 0, buffers));
+        assertEquals(Color.WHITE, buffers.getSolidColor());
+    }
+
+    @Test
+    public void pageWithColorKeepsItsTilesInColor() {
+        TileClassifier classifier = new TileClassifier(true);
+        Bitmap color = tile(Color.WHITE);
+        color.setPixel(0, 0, Color.BLUE);
+        Bitmap gray = tile(Color.WHITE);
+        gray.setPixel(0, 0, Color.BLACK);
+
+        assertEquals(TileClassifier.COLOR, classifier.classify(color, 1, buffers));
+        assertEquals(TileClassifier.COLOR, classifier.classify(gray, 1, buffers));
+        // Other pages are not affected
+        assertEquals(TileClassifier.GRAY, classifier.classify(gray, 2, buffers));
+    }
+
+    @Test
+    public void grayPageStillFindsColorInItsTiles() {
+        TileClassifier classifier = new TileClassifier(true);
+        // A coarse render of the page, where a thin colored line vanished
+        Bitmap thumbnail = tile(Color.WHITE);
+        thumbnail.setPixel(0, 0, Color.BLACK);
+        Bitmap tile = tile(Color.WHITE);
+        tile.setPixel(0, 0, Color.BLACK);
+        tile.setPixel(9, 9, Color.GREEN);
+
+        assertEquals(TileClassifier.GRAY, classifier.classify(thumbnail, 0, buffers));
+        assertEquals(TileClassifier.COLOR, classifier.classify(tile, 0, buffers));
+    }
+
+    private static Bitmap tile(int color) {
+        Bitmap bitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(color);
+        return bitmap;
+    }
+}
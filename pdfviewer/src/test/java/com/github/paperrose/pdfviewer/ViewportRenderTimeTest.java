@@ -0,0 +1,80 @@
+package com.github.paperrose.pdfviewer;
+
+import android.os.Looper;
+import android.view.View;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.github.paperrose.pdfviewer.render.SyntheticPageRenderer;
+import com.github.paperrose.pdfviewer.render.SyntheticPages;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Time to a full viewport with 1, 2 and 4 render workers, through the real loading, scheduling
+ * and caching of PDFView, the pages rendered by {@link SyntheticPageRenderer} at a pdfium like cost.
+ * The times are printed, they depend on the cores of the machine running the tests.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ViewportRenderTimeTest {
+
+    private static final int WIDTH = 1080;
+
+    private static final int HEIGHT = 1920;
+
+    /**
+     * About 2.6 ms for a 256x256 part, a simple page with pdfium on a mid-range device
+     */
+    private static final long MEGAPIXEL_COST_NANOS = 40000000L;
+
+    private static final long RENDER_TIMEOUT_MILLIS = 30000;
+
+    @Test
+    public void coversViewportWithEveryWorkerCount() throws Exception {
+        for (int workers : new int[]{1, 2, 4}) {
+            long nanos = timeToViewport(workers);
+            System.out.println(String.format("%d workers: %d ms to a full viewport", workers,
+                    TimeUnit.NANOSECONDS.toMillis(nanos)));
+            assertTrue(nanos > 0);
+        }
+    }
+
+    private long timeToViewport(int workers) throws Exception {
+        PDFView pdfView = new PDFView(ApplicationProvider.getApplicationContext(), null);
+        pdfView.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        pdfView.layout(0, 0, WIDTH, HEIGHT);
+        pdfView.setRenderMetricsEnabled(true);
+        try {
+            // Grayscale tiles and the compressed cache are off, see PDFViewDrawAllocationTest
+            pdfView.fromBytes(new byte[1], null)
+                    .pageRenderer(new SyntheticPageRenderer(new SyntheticPages(16, 612, 792)
+                            .setColorEvery(4)
+                            .setMegapixelCostNanos(MEGAPIXEL_COST_NANOS)))
+                    .renderWorkers(workers)
+                    .grayscaleTiles(false)
+                    .compressedCacheMaxBytes(0)
+                    .load();
+
+            long deadline = System.currentTimeMillis() + RENDER_TIMEOUT_MILLIS;
+            while (!pdfView.renderMetrics.isViewportCovered()) {
+                assertTrue("Viewport not rendered in time with " + workers + " workers",
+                        System.currentTimeMillis() < deadline);
+                shadowOf(Looper.getMainLooper()).idle();
+                Thread.sleep(1);
+            }
+            return pdfView.getRenderMetrics().getTimeToFirstCoveredViewportNanos();
+        } finally {
+            pdfView.recycle();
+        }
+    }
+}